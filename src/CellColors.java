@@ -0,0 +1,35 @@
+/**
+ * The colors of the cell codes of a SnakeEngine, as ARGB ints, for the frontends
+ * that draw without the FX toolkit. They are the same colors that SnakeCanvas
+ * draws with: the background of SnakeCanvas, Color.OLIVE as in SnakeData,
+ * Color.SIENNA as in FoodData, and Color.DIMGRAY for walls. This class must not
+ * use any FX class, so that SnakeTerminal runs on a JDK without JavaFX.
+ */
+
+public class CellColors {
+
+
+    public static final int BACKGROUND_ARGB = 0xFF282828; // rgb(40, 40, 40)
+    public static final int SNAKE_ARGB = 0xFF808000; // Color.OLIVE
+    public static final int FOOD_ARGB = 0xFFA0522D; // Color.SIENNA
+    public static final int WALL_ARGB = 0xFF696969; // Color.DIMGRAY. Walls only exist in levels.
+
+
+    private CellColors() {
+    }
+
+
+    /**
+     * Return the ARGB color of a cell code.
+     */
+    public static int of(byte code) {
+        return switch (code) {
+            case SnakeEngine.SNAKE -> SNAKE_ARGB;
+            case SnakeEngine.FOOD -> FOOD_ARGB;
+            case SnakeEngine.WALL -> WALL_ARGB;
+            default -> BACKGROUND_ARGB;
+        };
+    }
+
+
+} // end of class CellColors
@@ -0,0 +1,281 @@
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A FrameExporter saves the frames of a game as images, either as a numbered sequence
+ * of PNG files or as one animated PNG. Capturing a frame only copies the board of the
+ * game into a free buffer; the frame is drawn with a SnakeRasterizer and encoded by a
+ * background thread, so the game keeps running while the images are written.
+ *
+ * A typical export looks like this:
+ *
+ *     try (FrameExporter out = FrameExporter.animatedPng(file, rasterizer, 150)) {
+ *         while (game.getPlaying()) {
+ *             game.tick();
+ *             out.capture(game);
+ *         }
+ *     }
+ */
+
+public class FrameExporter implements AutoCloseable {
+
+
+    //------------------ private instance variables --------------------
+
+
+    private static final int BUFFERS = 256; // The number of boards that can wait to be encoded.
+
+    private static final byte[] END = new byte[0]; // Tells the pipeline thread to finish.
+
+    private final SnakeRasterizer rasterizer; // Draws each captured board.
+
+    private final PngEncoder encoder; // Encodes each drawn frame.
+
+    private final Path target; // The output directory or file.
+
+    private final boolean animated; // True for one animated PNG, false for a PNG sequence.
+
+    private final int delay; // How long each frame of an animation is shown, in milliseconds.
+
+    private final ArrayBlockingQueue<byte[]> free; // Buffers ready to receive a board.
+
+    private final ArrayBlockingQueue<byte[]> pending; // Boards waiting to be encoded.
+
+    private final Thread pipeline; // The thread that draws and encodes the frames.
+
+    private FileChannel channel; // The animated PNG file, if there is one.
+
+    private OutputStream animation; // A buffered stream writing to channel.
+
+    private volatile IOException failure; // The first error of the pipeline thread.
+
+    private volatile int framesWritten; // The number of frames encoded so far.
+
+    private int framesCaptured; // The number of frames handed to the pipeline.
+
+    private boolean closed;
+
+
+    //------------------------ constructors -----------------------------
+
+
+    /**
+     * Create an exporter that writes each frame to its own PNG file, named
+     * frame_00000.png, frame_00001.png, ... in the given directory.
+     */
+    public static FrameExporter pngSequence(Path directory, SnakeRasterizer rasterizer) throws IOException {
+        Files.createDirectories(directory);
+        return new FrameExporter(rasterizer, directory, false, 0);
+    }
+
+
+    /**
+     * Create an exporter that writes all frames into one animated PNG file.
+     * @param delay how long each frame is shown, in milliseconds.
+     */
+    public static FrameExporter animatedPng(Path file, SnakeRasterizer rasterizer, int delay) throws IOException {
+        return new FrameExporter(rasterizer, file, true, delay);
+    }
+
+
+    private FrameExporter(SnakeRasterizer rasterizer, Path target, boolean animated, int delay) throws IOException {
+        this.rasterizer = rasterizer;
+        this.target = target;
+        this.animated = animated;
+        this.delay = delay;
+        encoder = new PngEncoder(rasterizer.getWidth(), rasterizer.getHeight(), rasterizer.getPalette());
+        if (animated) {
+            channel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            animation = new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16);
+            encoder.writeAnimationStart(animation, 0); // the frame count is filled in by close()
+        }
+        free = new ArrayBlockingQueue<byte[]>(BUFFERS);
+        pending = new ArrayBlockingQueue<byte[]>(BUFFERS + 1);
+        pipeline = new Thread(this::runPipeline, "frame-exporter");
+        pipeline.setDaemon(true);
+        pipeline.start();
+    }
+
+
+    //--------- methods for getting exporter properties ----------
+
+
+    /**
+     * Return the number of frames that have been encoded so far.
+     */
+    public int getFramesWritten() {
+        return framesWritten;
+    }
+
+
+    //------------------ other useful public methods ---------------------
+
+
+    /**
+     * Capture the current board of a game. If the pipeline thread has fallen a full
+     * set of buffers behind, this waits for it, so that no frame is lost.
+     * @throws IOException if an earlier frame could not be written.
+     */
+    public void capture(SnakeEngine game) throws IOException {
+        checkOpen();
+        checkSize(game);
+        byte[] cells = free.poll();
+        if (cells == null) {
+            if (framesCaptured < BUFFERS) {
+                cells = newBuffer();
+            }
+            else {
+                try {
+                    while ((cells = free.poll(100, TimeUnit.MILLISECONDS)) == null) {
+                        if (!pipeline.isAlive()) // should not happen, but must not hang the game
+                            throw new IOException("The frame exporter thread has stopped.");
+                    }
+                }
+                catch (InterruptedException e) {
+                    throw new InterruptedIOException("Interrupted while waiting for a free frame.");
+                }
+            }
+        }
+        submit(game, cells);
+    }
+
+
+    /**
+     * Capture the current board of a game only if a buffer is free right away. This
+     * never waits, so it is suitable for recording a game played in real time.
+     * @return false if the frame was skipped because the pipeline is behind.
+     * @throws IOException if an earlier frame could not be written.
+     */
+    public boolean offer(SnakeEngine game) throws IOException {
+        checkOpen();
+        checkSize(game);
+        byte[] cells = free.poll();
+        if (cells == null) {
+            if (framesCaptured >= BUFFERS)
+                return false;
+            cells = newBuffer();
+        }
+        submit(game, cells);
+        return true;
+    }
+
+
+    /**
+     * Wait for every captured frame to be written, then finish the output.
+     */
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        pending.add(END);
+        try {
+            pipeline.join();
+        }
+        catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while finishing the export.");
+        }
+        if (animated) {
+            try {
+                if (failure == null) {
+                    encoder.writeAnimationEnd(animation);
+                    animation.flush();
+                    channel.position(PngEncoder.getAnimationControlOffset());
+                    channel.write(ByteBuffer.wrap(encoder.animationControlChunk(framesWritten)));
+                }
+            }
+            finally {
+                channel.close();
+            }
+        }
+        if (failure != null)
+            throw failure;
+    }
+
+
+    // private implementation section
+
+
+    private void checkOpen() throws IOException {
+        if (closed)
+            throw new IllegalStateException("The exporter is closed.");
+        if (failure != null)
+            throw failure;
+    }
+
+
+    private void checkSize(SnakeEngine game) {
+        if (game.getRows() != rasterizer.getRows() || game.getColumns() != rasterizer.getColumns())
+            throw new IllegalArgumentException("The game does not match the size of the rasterizer.");
+    }
+
+
+    private byte[] newBuffer() {
+        return new byte[rasterizer.getRows() * rasterizer.getColumns()];
+    }
+
+
+    private void submit(SnakeEngine game, byte[] cells) {
+        game.copyCells(cells);
+        framesCaptured++;
+        pending.add(cells);
+    }
+
+
+    /**
+     * The body of the pipeline thread: draw and encode boards until told to stop.
+     */
+    private void runPipeline() {
+        int[] frame = rasterizer.newFrame();
+        while (true) {
+            byte[] cells;
+            try {
+                cells = pending.take();
+            }
+            catch (InterruptedException e) {
+                continue;
+            }
+            if (cells == END)
+                return;
+            if (failure == null) {
+                try {
+                    rasterizer.render(cells, frame);
+                    writeFrame(frame);
+                    framesWritten++;
+                }
+                catch (IOException e) {
+                    failure = e;
+                }
+                catch (RuntimeException e) { // recorded like an IOException, so the thread goes on
+                    failure = new IOException("Could not encode frame " + framesWritten + ".", e);
+                }
+            }
+            free.add(cells);
+        }
+    }
+
+
+    private void writeFrame(int[] frame) throws IOException {
+        if (animated) {
+            encoder.writeAnimationFrame(frame, animation, delay);
+        }
+        else {
+            Path file = target.resolve(String.format("frame_%05d.png", framesWritten));
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 1 << 14)) {
+                encoder.writeImage(frame, out);
+            }
+        }
+    }
+
+
+} // end of class FrameExporter
@@ -0,0 +1,262 @@
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A GameEventBus carries game events from the threads that play games to listeners
+ * such as analytics or sound, each of which runs on a thread of its own. Events are
+ * written into a ring buffer that is allocated once, as plain values in parallel
+ * arrays, and no locks are taken: a publisher claims a slot with an atomic counter,
+ * fills it in, and marks it published; every listener follows the buffer with its
+ * own sequence number. Every listener sees every event that was accepted.
+ *
+ * When the slowest listener is a whole buffer behind, the buffer is full, and what
+ * happens to a new event depends on the Policy of the bus. With DROP and SAMPLE a
+ * publisher never waits, so a slow listener can never slow down a game.
+ */
+
+public class GameEventBus implements AutoCloseable {
+
+
+    /**
+     * What a publisher does with an event when the buffer is full.
+     */
+    public enum Policy {
+        DROP,   // Throw the event away.
+        BLOCK,  // Wait until the slowest listener makes room.
+        SAMPLE  // Throw the event away, and once the buffer is half full, keep only
+                //    one event in SAMPLE_RATE so that listeners still see a picture
+                //    of what is going on while they catch up.
+    }
+
+    public static final int SAMPLE_RATE = 8;
+
+    private static final GameEventType[] TYPES = GameEventType.values();
+
+
+    //------------------ private instance variables --------------------
+
+
+    private final Policy policy; // What to do when the buffer is full.
+
+    private final int mask; // The capacity of the buffer minus one.
+
+    // The ring buffer, one array per field of an event
+    private final byte[] types;
+    private final long[] games, ticks;
+    private final int[] cells, values;
+    private final AtomicLongArray published; // The sequence number last published in each slot.
+
+    private final AtomicLong claimed = new AtomicLong(-1); // The last sequence number claimed.
+
+    private final CopyOnWriteArrayList<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+    private volatile long cachedMinimum = -1; // The slowest listener's sequence, when last checked.
+
+    private final AtomicLong offered = new AtomicLong(); // Events offered while the bus was filling up.
+
+    private final LongAdder dropped = new LongAdder(); // Events thrown away.
+
+    private volatile boolean closed;
+
+
+    //------------------------ constructors -----------------------------
+
+
+    /**
+     * Construct a GameEventBus.
+     * @param capacity the number of events the buffer holds. Rounded up to a power of two.
+     * @param policy what to do with an event when the buffer is full.
+     */
+    public GameEventBus(int capacity, Policy policy) {
+        if (capacity <= 0 || capacity > 1 << 30)
+            throw new IllegalArgumentException("The capacity must be between 1 and 2^30.");
+        int size = 1;
+        while (size < capacity)
+            size <<= 1;
+        mask = size - 1;
+        this.policy = policy;
+        types = new byte[size];
+        games = new long[size];
+        ticks = new long[size];
+        cells = new int[size];
+        values = new int[size];
+        published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++)
+            published.set(i, -1);
+    }
+
+
+    //--------- methods for getting bus properties ----------
+
+
+    /**
+     * Return the number of events the buffer holds.
+     */
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+
+    /**
+     * Return the number of events that were thrown away because the buffer was full
+     * or being sampled.
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+
+    //------------------ other useful public methods ---------------------
+
+
+    /**
+     * Start a thread that passes every event published from now on to a listener.
+     * If the listener throws a RuntimeException, it is passed to the uncaught
+     * exception handler of the listener's thread (see Thread.setDefaultUncaughtExceptionHandler)
+     * and the listener goes on with the next event. If it throws an Error, the
+     * listener is removed from the bus and its thread ends.
+     */
+    public void subscribe(GameEventListener listener) {
+        if (closed)
+            throw new IllegalStateException("The bus is closed.");
+        Subscriber s = new Subscriber(listener, claimed.get());
+        subscribers.add(s);
+        // A publisher that looked at the listeners before s was added may have let the
+        // buffer run past the sequence read above. Every minimum computed so far is at
+        // most the sequence claimed now, and every later one takes s into account, so
+        // starting s from here means no slot it waits for can be reused under it.
+        s.sequence.set(claimed.get());
+        cachedMinimum = -1;
+        Thread thread = new Thread(s, "game-events-" + subscribers.size());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+
+    /**
+     * Publish an event. This never takes a lock, and only waits if the policy is
+     * BLOCK and the buffer is full.
+     * @return false if the event was thrown away.
+     */
+    public boolean publish(GameEventType type, long game, long tick, int cell, int value) {
+        long seq;
+        while (true) {
+            long last = claimed.get();
+            long next = last + 1;
+            long free = mask + 1 - (next - minimum(next));
+            if (free <= 0) {
+                if (policy != Policy.BLOCK || closed) {
+                    dropped.increment();
+                    return false;
+                }
+                LockSupport.parkNanos(1000);
+                continue;
+            }
+            if (policy == Policy.SAMPLE && free <= (mask + 1) / 2
+                    && offered.getAndIncrement() % SAMPLE_RATE != 0) {
+                dropped.increment();
+                return false;
+            }
+            if (claimed.compareAndSet(last, next)) {
+                seq = next;
+                break;
+            }
+        }
+
+        int slot = (int)seq & mask;
+        types[slot] = (byte)type.ordinal();
+        games[slot] = game;
+        ticks[slot] = tick;
+        cells[slot] = cell;
+        values[slot] = value;
+        published.lazySet(slot, seq); // makes the fields above visible to listeners
+        return true;
+    }
+
+
+    /**
+     * Stop every listener thread once it has handled the events already published.
+     */
+    public void close() {
+        closed = true;
+    }
+
+
+    // private implementation section
+
+
+    /**
+     * Return the sequence number of the slowest listener, checking the listeners
+     * again only when the cached value says the buffer might be full.
+     */
+    private long minimum(long next) {
+        long min = cachedMinimum;
+        if (next - min <= mask)
+            return min;
+        min = next - 1;
+        for (Subscriber s : subscribers)
+            min = Math.min(min, s.sequence.get());
+        cachedMinimum = min;
+        return min;
+    }
+
+
+    /**
+     * One listener and the sequence number of the last event it has handled.
+     */
+    private final class Subscriber implements Runnable {
+        final GameEventListener listener;
+        final AtomicLong sequence;
+
+        Subscriber(GameEventListener listener, long start) {
+            this.listener = listener;
+            sequence = new AtomicLong(start);
+        }
+
+        @Override
+        public void run() {
+            try {
+                follow();
+            }
+            finally { // a listener that stopped must not hold the buffer full
+                subscribers.remove(this);
+                cachedMinimum = -1;
+            }
+        }
+
+        private void follow() {
+            long seq = sequence.get();
+            int idle = 0;
+            while (true) {
+                long next = seq + 1;
+                int slot = (int)next & mask;
+                if (published.get(slot) == next) {
+                    try {
+                        listener.onEvent(TYPES[types[slot]], games[slot], ticks[slot], cells[slot], values[slot]);
+                    }
+                    catch (RuntimeException e) { // one bad event must not stop the listener
+                        Thread t = Thread.currentThread();
+                        t.getUncaughtExceptionHandler().uncaughtException(t, e);
+                    }
+                    seq = next;
+                    sequence.lazySet(seq);
+                    idle = 0;
+                }
+                else if (closed && claimed.get() <= seq) {
+                    return;
+                }
+                else if (++idle < 100) {
+                    Thread.onSpinWait();
+                }
+                else {
+                    LockSupport.parkNanos(100_000);
+                }
+            }
+        }
+    }
+
+
+} // end of class GameEventBus
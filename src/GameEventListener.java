@@ -0,0 +1,18 @@
+/**
+ * A GameEventListener receives the events of a GameEventBus, on a thread of its own.
+ * The event is passed as plain values so that nothing is allocated per event.
+ */
+
+public interface GameEventListener {
+
+    /**
+     * Handle one event.
+     * @param type what happened.
+     * @param game the id of the game, as given to the publisher.
+     * @param tick the tick of the game at which it happened.
+     * @param cell a cell index, see GameEventType.
+     * @param value a number, see GameEventType.
+     */
+    void onEvent(GameEventType type, long game, long tick, int cell, int value);
+
+} // end of interface GameEventListener
@@ -0,0 +1,15 @@
+/**
+ * The kinds of event a game publishes on a GameEventBus. The meaning of the cell
+ * and value of an event depends on its type, as described below.
+ */
+
+public enum GameEventType {
+
+    MOVED,     // The snake moved. Cell: the new head. Value: the direction.
+    ATE,       // The snake ate a food. Cell: the food. Value: the points scored.
+    SPAWNED,   // A food was added. Cell: the food. Value: 0.
+    DIED,      // The game ended. Cell: the head, before the move that killed it. Value: the cell code that was hit,
+               //    WALL for a wall or the edge of the board, SNAKE for the snake itself.
+    RESTARTED  // A new game started. Cell: the head. Value: 0.
+
+} // end of enum GameEventType
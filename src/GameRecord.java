@@ -0,0 +1,238 @@
+import java.util.Arrays;
+
+/**
+ * A GameRecord is everything needed to play a game of a SnakeEngine on the standard
+ * level again: the size of the board, the seed, and every direction the player asked
+ * for with the tick it was asked for before. It also keeps the outcome of the game
+ * (score, length of the snake, duration and death cause) so that a ReplayArchive can
+ * search records without playing them.
+ *
+ * Records are made with a GameRecord.Recorder, which plays the game and notes the
+ * inputs as they happen.
+ */
+
+public class GameRecord {
+
+
+    //------------------ private instance variables --------------------
+
+
+    private final int rows, columns; // The size of the board.
+
+    private final long seed; // The seed the game was started with.
+
+    private final int[] inputTicks; // For every input, the number of ticks played before it,
+    private final byte[] inputDirs; //    and the direction asked for.
+
+    private final int score; // The score at the end of the game.
+
+    private final int length; // The length of the snake at the end of the game.
+
+    private final int duration; // The number of ticks played.
+
+    private final byte deathCause; // What the snake hit, as in SnakeEngine, or EMPTY if it
+                                   //    was still alive when the recording stopped.
+
+
+    //------------------------ constructors -----------------------------
+
+
+    /**
+     * Construct a GameRecord.
+     * @param inputTicks for every input, the number of ticks played before it. Must not decrease.
+     * @param inputDirs for every input, the direction asked for.
+     */
+    public GameRecord(int rows, int columns, long seed, int[] inputTicks, byte[] inputDirs,
+                      int score, int length, int duration, byte deathCause) {
+        if (inputTicks.length != inputDirs.length)
+            throw new IllegalArgumentException("There must be one direction for every input tick.");
+        for (int i = 0; i < inputTicks.length; i++) {
+            if (inputTicks[i] < (i == 0 ? 0 : inputTicks[i - 1]) || inputTicks[i] > duration)
+                throw new IllegalArgumentException("Input " + i + " is out of order.");
+        }
+        this.rows = rows;
+        this.columns = columns;
+        this.seed = seed;
+        this.inputTicks = inputTicks;
+        this.inputDirs = inputDirs;
+        this.score = score;
+        this.length = length;
+        this.duration = duration;
+        this.deathCause = deathCause;
+    }
+
+
+    //--------- methods for getting record properties ----------
+
+
+    /**
+     * Return the number of rows on the board.
+     */
+    public int getRows() {
+        return rows;
+    }
+
+
+    /**
+     * Return the number of columns on the board.
+     */
+    public int getColumns() {
+        return columns;
+    }
+
+
+    /**
+     * Return the seed the game was started with.
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+
+    /**
+     * Return the number of inputs recorded.
+     */
+    public int getInputCount() {
+        return inputTicks.length;
+    }
+
+
+    /**
+     * Return the number of ticks played before input i.
+     */
+    public int getInputTick(int i) {
+        return inputTicks[i];
+    }
+
+
+    /**
+     * Return the direction asked for by input i.
+     */
+    public int getInputDir(int i) {
+        return inputDirs[i];
+    }
+
+
+    /**
+     * Return the score at the end of the game.
+     */
+    public int getScore() {
+        return score;
+    }
+
+
+    /**
+     * Return the length of the snake at the end of the game.
+     */
+    public int getLength() {
+        return length;
+    }
+
+
+    /**
+     * Return the number of ticks played.
+     */
+    public int getDuration() {
+        return duration;
+    }
+
+
+    /**
+     * Return what the snake hit, as in SnakeEngine.getDeathCause().
+     */
+    public byte getDeathCause() {
+        return deathCause;
+    }
+
+
+    //------------------ other useful public methods ---------------------
+
+
+    /**
+     * Play the whole game again.
+     * @return the game as it was when the recording stopped.
+     */
+    public SnakeEngine replay() {
+        return replay(duration);
+    }
+
+
+    /**
+     * Play the first ticks of the game again.
+     * @return the game after the given number of ticks.
+     */
+    public SnakeEngine replay(int ticks) {
+        SnakeEngine game = new SnakeEngine(rows, columns, seed);
+        int next = 0;
+        for (int t = 0; t < Math.min(ticks, duration); t++) {
+            while (next < inputTicks.length && inputTicks[next] == t)
+                game.changeDir(inputDirs[next++]);
+            game.tick();
+        }
+        return game;
+    }
+
+
+    /**
+     * A Recorder plays a game of a SnakeEngine and records it. Use changeDir() and
+     * tick() instead of the methods of the game itself.
+     */
+    public static class Recorder {
+
+        private final SnakeEngine game;
+        private final long seed;
+        private int[] inputTicks = new int[64];
+        private byte[] inputDirs = new byte[64];
+        private int inputCount;
+        private int duration;
+
+        /**
+         * Start a game on the standard level.
+         */
+        public Recorder(int rows, int columns, long seed) {
+            game = new SnakeEngine(rows, columns, seed);
+            this.seed = seed;
+        }
+
+        /**
+         * Return the game being recorded. It should only be looked at.
+         */
+        public SnakeEngine getGame() {
+            return game;
+        }
+
+        /**
+         * Ask for the snake to turn, as in SnakeEngine.changeDir().
+         */
+        public void changeDir(int dir) {
+            if (inputCount == inputTicks.length) {
+                inputTicks = Arrays.copyOf(inputTicks, inputCount * 2);
+                inputDirs = Arrays.copyOf(inputDirs, inputCount * 2);
+            }
+            inputTicks[inputCount] = duration;
+            inputDirs[inputCount++] = (byte)dir;
+            game.changeDir(dir);
+        }
+
+        /**
+         * Play one tick, as in SnakeEngine.tick(). Has no effect once the game is over.
+         */
+        public void tick() {
+            if (game.getPlaying()) {
+                game.tick();
+                duration++;
+            }
+        }
+
+        /**
+         * Return a record of the game so far.
+         */
+        public GameRecord toRecord() {
+            return new GameRecord(game.getRows(), game.getColumns(), seed,
+                    Arrays.copyOf(inputTicks, inputCount), Arrays.copyOf(inputDirs, inputCount),
+                    game.getScore(), game.getLength(), duration, game.getDeathCause());
+        }
+    }
+
+
+} // end of class GameRecord
@@ -0,0 +1,114 @@
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A GameSession is one real-time game hosted by a SessionHost: a SnakeEngine, the
+ * Speed it runs at, and the direction most recently asked for by its player. The
+ * host ticks the game on one of its worker threads whenever it is due, so the game
+ * itself should only be looked at from the events it publishes, or after the
+ * session has been closed. The host closes a session itself when its game ends.
+ */
+
+public class GameSession {
+
+
+    //------------------ private instance variables --------------------
+
+
+    private final long id; // The id of the session in its host.
+
+    private final SnakeEngine game; // The game being played.
+
+    private final Speed speed; // How often the game is ticked.
+
+    private final AtomicInteger pendingDir = new AtomicInteger(-1); // A direction asked for since
+                                                                    //    the last tick, or -1.
+
+    private volatile boolean closed; // True once the session should no longer be ticked.
+
+    // Used by SessionHost: the timing wheel is only touched by the host's driver thread
+    long deadline; // When the next tick is due, in milliseconds of host time.
+    GameSession next; // The next session in the same slot of the timing wheel.
+    final AtomicBoolean running = new AtomicBoolean(); // True while a worker is ticking the game.
+
+
+    //------------------------ constructors -----------------------------
+
+
+    GameSession(long id, SnakeEngine game, Speed speed) {
+        this.id = id;
+        this.game = game;
+        this.speed = speed;
+    }
+
+
+    //--------- methods for getting session properties ----------
+
+
+    /**
+     * Return the id of the session in its host.
+     */
+    public long getId() {
+        return id;
+    }
+
+
+    /**
+     * Return the game of the session.
+     */
+    public SnakeEngine getGame() {
+        return game;
+    }
+
+
+    /**
+     * Return the speed of the session.
+     */
+    public Speed getSpeed() {
+        return speed;
+    }
+
+
+    /**
+     * Return true if the session has been closed.
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+
+    //------------------ other useful public methods ---------------------
+
+
+    /**
+     * Ask for the snake to turn before its next tick. This may be called from any thread.
+     */
+    public void steer(int dir) {
+        pendingDir.set(dir);
+    }
+
+
+    /**
+     * Stop ticking the session. The host forgets it the next time it is due. This is
+     * also done by the host when the game ends.
+     */
+    public void close() {
+        closed = true;
+    }
+
+
+    // methods called by SessionHost
+
+
+    /**
+     * Play one tick, turning first if the player asked for it.
+     */
+    void tick() {
+        int dir = pendingDir.getAndSet(-1);
+        if (dir >= 0)
+            game.changeDir(dir);
+        game.tick();
+    }
+
+
+} // end of class GameSession
@@ -0,0 +1,276 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A Level describes the board a SnakeEngine plays on: its size, which cells are walls,
+ * the spawn points where the snake can start, and the zones where food may appear.
+ * A level is either built in memory with the methods below, or read from a LevelPack,
+ * in which case its cells are a read-only view of the memory-mapped file.
+ *
+ * A spawn point is the cell of the snake's head and the direction it starts moving in.
+ * The rest of the snake is laid out behind the head, as in Snake. If a level has no
+ * food zones, food can appear on any empty cell.
+ */
+
+public class Level {
+
+
+    public static final int START_LENGTH = 4; // The number of segments a snake starts with.
+
+
+    //------------------ private instance variables --------------------
+
+
+    private final int rows, columns; // The size of the board.
+
+    private final ByteBuffer cells; // One cell code per cell, row by row: EMPTY or WALL.
+
+    private int[] spawns; // The spawn points, as row, column, direction triples.
+    private int spawnCount;
+
+    private int[] zones; // The food zones, as row, column, height, width quadruples.
+    private int zoneCount;
+
+    private int zoneArea; // The total number of cells in the food zones.
+
+
+    //------------------------ constructors -----------------------------
+
+
+    /**
+     * Construct an empty Level with no walls, no spawn points and no food zones.
+     */
+    public Level(int rows, int columns) {
+        this(rows, columns, ByteBuffer.allocate(checkSize(rows, columns)), new int[0], new int[0]);
+    }
+
+
+    /**
+     * Construct a Level around a buffer of cells, which is used as it is.
+     */
+    Level(int rows, int columns, ByteBuffer cells, int[] spawns, int[] zones) {
+        checkSize(rows, columns);
+        if (cells.remaining() != rows * columns)
+            throw new IllegalArgumentException("The level must have one cell code for every cell.");
+        this.rows = rows;
+        this.columns = columns;
+        this.cells = cells;
+        this.spawns = new int[Math.max(3, spawns.length)];
+        this.zones = new int[Math.max(4, zones.length)];
+        for (int i = 0; i < spawns.length; i += 3)
+            addSpawn(spawns[i], spawns[i + 1], spawns[i + 2]);
+        for (int i = 0; i < zones.length; i += 4)
+            addFoodZone(zones[i], zones[i + 1], zones[i + 2], zones[i + 3]);
+    }
+
+
+    /**
+     * Return the level used when no level is given: an open board with the snake
+     * starting at the bottom center, moving UP, as in Snake.
+     */
+    public static Level standard(int rows, int columns) {
+        if (rows < START_LENGTH + 1)
+            throw new IllegalArgumentException("The board must have at least " + (START_LENGTH + 1) + " rows.");
+        Level level = new Level(rows, columns);
+        level.addSpawn(rows - START_LENGTH, columns / 2, 0);
+        return level;
+    }
+
+
+    //--------- methods for getting and setting level properties ----------
+
+
+    /**
+     * Return the number of rows on the board.
+     */
+    public int getRows() {
+        return rows;
+    }
+
+
+    /**
+     * Return the number of columns on the board.
+     */
+    public int getColumns() {
+        return columns;
+    }
+
+
+    /**
+     * Return the cell code at a row and column.
+     */
+    public byte getCell(int row, int column) {
+        return cells.get(cells.position() + row * columns + column);
+    }
+
+
+    /**
+     * Make a cell a wall. The cell must not be under the starting snake of a spawn
+     * point. Levels read from a LevelPack cannot be changed.
+     */
+    public void setWall(int row, int column) {
+        checkCell(row, column);
+        for (int i = 0; i < spawnCount; i++) {
+            for (int k = 0; k < START_LENGTH; k++) {
+                if (row == getSpawnRow(i) - k * rowStep(getSpawnDir(i))
+                        && column == getSpawnColumn(i) - k * columnStep(getSpawnDir(i)))
+                    throw new IllegalArgumentException("The cell (" + row + ", " + column
+                                                       + ") is under the snake of spawn point " + i + ".");
+            }
+        }
+        cells.put(cells.position() + row * columns + column, SnakeEngine.WALL);
+    }
+
+
+    /**
+     * Copy the cell codes of the level into an array of rows * columns bytes.
+     */
+    public void copyCells(byte[] dest) {
+        cells.duplicate().get(dest, 0, rows * columns);
+    }
+
+
+    /**
+     * Return a read-only view of the cell codes of the level.
+     */
+    public ByteBuffer getCells() {
+        return cells.asReadOnlyBuffer();
+    }
+
+
+    /**
+     * Return the number of spawn points.
+     */
+    public int getSpawnCount() {
+        return spawnCount;
+    }
+
+
+    /**
+     * Return the row of the head at spawn point i.
+     */
+    public int getSpawnRow(int i) {
+        return spawns[i * 3];
+    }
+
+
+    /**
+     * Return the column of the head at spawn point i.
+     */
+    public int getSpawnColumn(int i) {
+        return spawns[i * 3 + 1];
+    }
+
+
+    /**
+     * Return the starting direction at spawn point i.
+     */
+    public int getSpawnDir(int i) {
+        return spawns[i * 3 + 2];
+    }
+
+
+    /**
+     * Return the number of food zones.
+     */
+    public int getFoodZoneCount() {
+        return zoneCount;
+    }
+
+
+    /**
+     * Return one value of food zone i: 0 = row, 1 = column, 2 = height, 3 = width.
+     */
+    public int getFoodZone(int i, int field) {
+        return zones[i * 4 + field];
+    }
+
+
+    /**
+     * Return the total number of cells in all food zones.
+     */
+    public int getFoodZoneArea() {
+        return zoneArea;
+    }
+
+
+    //------------------ other useful public methods ---------------------
+
+
+    /**
+     * Add a spawn point. There must be room on the board for the whole starting
+     * snake behind the head, and none of its cells may be a wall.
+     * @param dir the starting direction, numbered as in Snake.
+     */
+    public void addSpawn(int row, int column, int dir) {
+        if (dir < 0 || dir > 3)
+            throw new IllegalArgumentException("Direction must be between 0 and 3.");
+        checkCell(row, column);
+        checkCell(row - (START_LENGTH - 1) * rowStep(dir), column - (START_LENGTH - 1) * columnStep(dir));
+        for (int k = 0; k < START_LENGTH; k++) {
+            int r = row - k * rowStep(dir), c = column - k * columnStep(dir);
+            if (getCell(r, c) == SnakeEngine.WALL)
+                throw new IllegalArgumentException("The snake of the spawn point would start on the wall at ("
+                                                   + r + ", " + c + ").");
+        }
+        if (spawnCount * 3 == spawns.length)
+            spawns = Arrays.copyOf(spawns, spawns.length * 2);
+        spawns[spawnCount * 3] = row;
+        spawns[spawnCount * 3 + 1] = column;
+        spawns[spawnCount * 3 + 2] = dir;
+        spawnCount++;
+    }
+
+
+    /**
+     * Add a rectangle of cells where food may appear.
+     */
+    public void addFoodZone(int row, int column, int height, int width) {
+        if (height <= 0 || width <= 0)
+            throw new IllegalArgumentException("A food zone must have a positive height and width.");
+        checkCell(row, column);
+        checkCell(row + height - 1, column + width - 1);
+        if (zoneCount * 4 == zones.length)
+            zones = Arrays.copyOf(zones, zones.length * 2);
+        zones[zoneCount * 4] = row;
+        zones[zoneCount * 4 + 1] = column;
+        zones[zoneCount * 4 + 2] = height;
+        zones[zoneCount * 4 + 3] = width;
+        zoneCount++;
+        zoneArea += height * width;
+    }
+
+
+    /**
+     * Return the change in row for one move in a direction.
+     */
+    public static int rowStep(int dir) {
+        return dir == 0 ? -1 : dir == 2 ? 1 : 0;
+    }
+
+
+    /**
+     * Return the change in column for one move in a direction.
+     */
+    public static int columnStep(int dir) {
+        return dir == 1 ? 1 : dir == 3 ? -1 : 0;
+    }
+
+
+    // private implementation section
+
+
+    private static int checkSize(int rows, int columns) {
+        if (rows <= 0 || columns <= 0 || (long)rows * columns > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Rows and Columns must be greater than zero.");
+        return rows * columns;
+    }
+
+
+    private void checkCell(int row, int column) {
+        if (row < 0 || row >= rows || column < 0 || column >= columns)
+            throw new IllegalArgumentException("The cell (" + row + ", " + column + ") is not on the board.");
+    }
+
+
+} // end of class Level
@@ -0,0 +1,197 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * A LevelPack is a file holding any number of levels. The file starts with a small
+ * header and a fixed-size index entry for every level, so opening a pack only reads
+ * the index, and a level is only looked at when getLevel() is called. The cells of a
+ * level are stored as one byte per cell, so they can be copied straight from the
+ * memory-mapped file into the cell grid of a SnakeEngine.
+ *
+ * All numbers are big-endian. The layout of a pack is:
+ *
+ *     header   "SNKP", version (int), number of levels (int)
+ *     index    for each level: offset in the file (long), size in bytes (int),
+ *              rows (int), columns (int)
+ *     levels   for each level: rows, columns, spawn count, zone count (ints),
+ *              spawns as row, column, direction (ints),
+ *              zones as row, column, height, width (ints),
+ *              rows * columns cell codes (bytes)
+ */
+
+public class LevelPack implements AutoCloseable {
+
+
+    //------------------ private instance variables --------------------
+
+
+    private static final int MAGIC = 0x534E4B50; // "SNKP"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 12;
+    private static final int INDEX_ENTRY_SIZE = 20;
+
+    private final FileChannel channel; // The open pack file.
+
+    private final MappedByteBuffer index; // The mapped index of the pack.
+
+    private final int count; // The number of levels in the pack.
+
+
+    //------------------------ constructors -----------------------------
+
+
+    /**
+     * Open a level pack. Only the header and the index are read.
+     * @throws IOException if the file cannot be read or is not a level pack.
+     */
+    public LevelPack(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getInt(0) != MAGIC)
+                throw new IOException(file + " is not a level pack.");
+            if (header.getInt(4) != VERSION)
+                throw new IOException(file + " has an unsupported level pack version.");
+            count = header.getInt(8);
+            if (count < 0 || HEADER_SIZE + (long)count * INDEX_ENTRY_SIZE > channel.size())
+                throw new IOException(file + " has a damaged index.");
+            index = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, (long)count * INDEX_ENTRY_SIZE);
+        }
+        catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+
+    //--------- methods for getting pack properties ----------
+
+
+    /**
+     * Return the number of levels in the pack.
+     */
+    public int getLevelCount() {
+        return count;
+    }
+
+
+    /**
+     * Return the number of rows of level i, without reading the level.
+     */
+    public int getRows(int i) {
+        offset(i);
+        return index.getInt(i * INDEX_ENTRY_SIZE + 12);
+    }
+
+
+    /**
+     * Return the number of columns of level i, without reading the level.
+     */
+    public int getColumns(int i) {
+        offset(i);
+        return index.getInt(i * INDEX_ENTRY_SIZE + 16);
+    }
+
+
+    //------------------ other useful public methods ---------------------
+
+
+    /**
+     * Map level i of the pack. The cells of the level are not copied: the level reads
+     * them from the file through the mapping. Nor are they checked here; a SnakeEngine
+     * checks them while it copies them onto its board.
+     * @throws IOException if the level cannot be read or is damaged.
+     */
+    public Level getLevel(int i) throws IOException {
+        long offset = offset(i);
+        int size = index.getInt(i * INDEX_ENTRY_SIZE + 8);
+        if (size < 16 || offset + size > channel.size())
+            throw new IOException("Level " + i + " lies outside the pack.");
+        MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+        int rows = data.getInt();
+        int columns = data.getInt();
+        int spawnCount = data.getInt();
+        int zoneCount = data.getInt();
+        long expected = 16 + 12L * spawnCount + 16L * zoneCount + (long)rows * columns;
+        if (rows <= 0 || columns <= 0 || spawnCount < 0 || zoneCount < 0 || expected != size)
+            throw new IOException("Level " + i + " is damaged.");
+        int[] spawns = new int[spawnCount * 3];
+        int[] zones = new int[zoneCount * 4];
+        data.asIntBuffer().get(spawns);
+        data.position(data.position() + spawns.length * 4);
+        data.asIntBuffer().get(zones);
+        data.position(data.position() + zones.length * 4);
+        try {
+            return new Level(rows, columns, data.slice().asReadOnlyBuffer(), spawns, zones);
+        }
+        catch (IllegalArgumentException e) {
+            throw new IOException("Level " + i + " is damaged: " + e.getMessage());
+        }
+    }
+
+
+    /**
+     * Close the pack file. Levels that were already returned stay usable.
+     */
+    public void close() throws IOException {
+        channel.close();
+    }
+
+
+    /**
+     * Write a list of levels to a new level pack file.
+     */
+    public static void write(Path file, List<Level> levels) throws IOException {
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer head = ByteBuffer.allocate(HEADER_SIZE + levels.size() * INDEX_ENTRY_SIZE);
+            head.putInt(MAGIC).putInt(VERSION).putInt(levels.size());
+            long offset = head.capacity();
+            for (Level level : levels) {
+                int size = 16 + 12 * level.getSpawnCount() + 16 * level.getFoodZoneCount()
+                        + level.getRows() * level.getColumns();
+                head.putLong(offset).putInt(size).putInt(level.getRows()).putInt(level.getColumns());
+                offset += size;
+            }
+            head.flip();
+            writeFully(out, head);
+
+            for (Level level : levels) {
+                ByteBuffer info = ByteBuffer.allocate(16 + 12 * level.getSpawnCount() + 16 * level.getFoodZoneCount());
+                info.putInt(level.getRows()).putInt(level.getColumns())
+                    .putInt(level.getSpawnCount()).putInt(level.getFoodZoneCount());
+                for (int s = 0; s < level.getSpawnCount(); s++)
+                    info.putInt(level.getSpawnRow(s)).putInt(level.getSpawnColumn(s)).putInt(level.getSpawnDir(s));
+                for (int z = 0; z < level.getFoodZoneCount(); z++)
+                    for (int field = 0; field < 4; field++)
+                        info.putInt(level.getFoodZone(z, field));
+                info.flip();
+                writeFully(out, info);
+                writeFully(out, level.getCells());
+            }
+        }
+    }
+
+
+    // private implementation section
+
+
+    private long offset(int i) {
+        if (i < 0 || i >= count)
+            throw new IndexOutOfBoundsException("There is no level " + i + " in the pack.");
+        return index.getLong(i * INDEX_ENTRY_SIZE);
+    }
+
+
+    private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining())
+            out.write(buffer);
+    }
+
+
+} // end of class LevelPack
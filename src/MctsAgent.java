@@ -0,0 +1,234 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An MctsAgent chooses moves for a SnakeEngine by Monte Carlo tree search. Every
+ * iteration forks the game, walks down the search tree by the UCT rule, plays a short
+ * random rollout, and adds the result to every node on the way back up. Iterations
+ * run in parallel on a ForkJoinPool and share one tree. Its counters are atomic, and
+ * a visit is counted on the way down, so that threads spread out over different
+ * branches instead of all following the same one.
+ *
+ * Moves in the tree are relative to the snake: straight ahead, turn right or turn
+ * left, since turning back is always fatal.
+ */
+
+public class MctsAgent {
+
+
+    public static final int ROLLOUT_DEPTH = 40; // The number of ticks in one random rollout.
+    public static final double EXPLORATION = 1.4; // The UCT exploration constant.
+
+    private static final int ACTIONS = 3; // Straight, right, left.
+    private static final int LEAF_ITERATIONS = 32; // Iterations one task runs without splitting.
+    private static final double SCALE = 1000; // Values are kept in thousandths, in an AtomicLong.
+
+
+    //------------------ private instance variables --------------------
+
+
+    private final ForkJoinPool pool; // Runs the iterations.
+
+    private final LongAdder rollouts = new LongAdder(); // The number of rollouts played so far.
+
+
+    //------------------------ constructors -----------------------------
+
+
+    /**
+     * Construct an MctsAgent that searches on the common ForkJoinPool.
+     */
+    public MctsAgent() {
+        this(ForkJoinPool.commonPool());
+    }
+
+
+    /**
+     * Construct an MctsAgent that searches on the given pool.
+     */
+    public MctsAgent(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+
+    //--------- methods for getting agent properties ----------
+
+
+    /**
+     * Return the number of rollouts played since the agent was created.
+     */
+    public long getRollouts() {
+        return rollouts.sum();
+    }
+
+
+    //------------------ other useful public methods ---------------------
+
+
+    /**
+     * Search for the best move from the current state of a game.
+     * @param game the game. It is not changed.
+     * @param iterations the number of iterations to run, spread over the pool.
+     * @return the direction to pass to changeDir(), numbered as in Snake.
+     */
+    public int chooseDir(SnakeEngine game, int iterations) {
+        SnakeEngine root = game.fork(); // never written, so every worker may fork it at once
+        Node tree = new Node();
+        pool.invoke(new Search(root, tree, iterations));
+
+        int best = 0;
+        for (int a = 1; a < ACTIONS; a++) {
+            Node child = tree.children.get(a);
+            Node current = tree.children.get(best);
+            if (child != null && (current == null || child.visits.get() > current.visits.get()))
+                best = a;
+        }
+        return turn(game.getDir(), best);
+    }
+
+
+    // private implementation section
+
+
+    /**
+     * A node of the search tree. Children are created the first time they are
+     * visited, by whichever thread gets there first.
+     */
+    private static final class Node {
+        final AtomicReferenceArray<Node> children = new AtomicReferenceArray<>(ACTIONS);
+        final AtomicInteger visits = new AtomicInteger();
+        final AtomicLong value = new AtomicLong(); // The total reward, in thousandths.
+    }
+
+
+    /**
+     * A fork-join task that runs a number of iterations, splitting them in half
+     * until each part is small.
+     */
+    @SuppressWarnings("serial") // tasks are never serialized
+    private final class Search extends RecursiveAction {
+        private final SnakeEngine root;
+        private final Node tree;
+        private final int iterations;
+
+        Search(SnakeEngine root, Node tree, int iterations) {
+            this.root = root;
+            this.tree = tree;
+            this.iterations = iterations;
+        }
+
+        @Override
+        protected void compute() {
+            if (iterations > LEAF_ITERATIONS) {
+                int half = iterations / 2;
+                invokeAll(new Search(root, tree, half), new Search(root, tree, iterations - half));
+            }
+            else {
+                for (int i = 0; i < iterations; i++)
+                    iterate(root, tree);
+            }
+        }
+    }
+
+
+    /**
+     * Run one iteration: select, expand, roll out and back up.
+     */
+    private void iterate(SnakeEngine root, Node tree) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        SnakeEngine game = root.fork();
+        int startScore = game.getScore();
+        Node[] path = new Node[64];
+        int depth = 0;
+        Node node = tree;
+        node.visits.incrementAndGet();
+        path[depth++] = node;
+
+        // Selection and expansion: follow UCT until a new node is created or the game ends
+        boolean expanded = false;
+        while (!expanded && game.getPlaying() && depth < path.length) {
+            int action = select(node);
+            Node child = node.children.get(action);
+            if (child == null) {
+                node.children.compareAndSet(action, null, new Node());
+                child = node.children.get(action);
+                expanded = true;
+            }
+            child.visits.incrementAndGet();
+            path[depth++] = child;
+            game.changeDir(turn(game.getDir(), action));
+            game.tick();
+            node = child;
+        }
+
+        // Rollout: random moves that avoid anything right in front of the snake
+        for (int t = 0; t < ROLLOUT_DEPTH && game.getPlaying(); t++) {
+            int dir = game.getDir();
+            int choice = -1, options = 0;
+            for (int a = 0; a < ACTIONS; a++) {
+                int d = turn(dir, a);
+                int next = game.getNeighbor(game.getHead(), d);
+                byte cell = next < 0 ? SnakeEngine.WALL : game.getCell(next);
+                if (cell == SnakeEngine.EMPTY || cell == SnakeEngine.FOOD) {
+                    options++;
+                    if (random.nextInt(options) == 0)
+                        choice = d;
+                }
+            }
+            if (choice >= 0)
+                game.changeDir(choice);
+            game.tick();
+        }
+        rollouts.increment();
+
+        double reward = (game.getScore() - startScore) / (double)SnakeEngine.FOOD_VALUE;
+        if (!game.getPlaying())
+            reward -= 1;
+        long scaled = Math.round(reward * SCALE);
+        for (int i = 0; i < depth; i++)
+            path[i].value.addAndGet(scaled);
+    }
+
+
+    /**
+     * Pick the child of a node to follow: an untried action first, otherwise the
+     * action with the highest UCT score.
+     */
+    private int select(Node node) {
+        int parentVisits = Math.max(1, node.visits.get());
+        double logParent = Math.log(parentVisits);
+        int best = 0;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        for (int a = 0; a < ACTIONS; a++) {
+            Node child = node.children.get(a);
+            if (child == null)
+                return a;
+            int visits = Math.max(1, child.visits.get());
+            double score = child.value.get() / SCALE / visits + EXPLORATION * Math.sqrt(logParent / visits);
+            if (score > bestScore) {
+                bestScore = score;
+                best = a;
+            }
+        }
+        return best;
+    }
+
+
+    /**
+     * Return the direction reached by taking an action from a direction.
+     */
+    private static int turn(int dir, int action) {
+        return switch (action) {
+            case 1 -> (dir + 1) % 4; // turn right
+            case 2 -> (dir + 3) % 4; // turn left
+            default -> dir;
+        };
+    }
+
+
+} // end of class MctsAgent
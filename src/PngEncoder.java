@@ -0,0 +1,284 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * A small PNG encoder for snake frames. Frames only ever contain a few colors, so they
+ * are written as palette images with as few bits per pixel as the palette allows, and
+ * every line is stored as its difference from the line above. Since each cell is a
+ * block of identical lines, most lines become zeros and compress very quickly. The
+ * encoder can write single PNG images or the frames of an animated PNG (APNG).
+ *
+ * An encoder reuses its buffers between frames, so it must only be used by one
+ * thread at a time.
+ */
+
+public class PngEncoder {
+
+
+    //------------------ private instance variables --------------------
+
+
+    private static final byte[] SIGNATURE = { (byte)137, 80, 78, 71, 13, 10, 26, 10 };
+
+    private final int width, height; // The size of every frame, in pixels.
+
+    private final int[] palette; // The ARGB colors that may appear in a frame.
+
+    private final byte[] lines; // The filtered lines of the current frame, each
+                                //    starting with its filter type.
+
+    private final int bitDepth; // Bits per pixel: as few as the size of the palette allows.
+
+    private final int lineBytes; // The number of bytes in one packed line of pixels.
+
+    private final byte[] previous, current; // Packed palette indices of the previous and current line.
+
+    private byte[] compressed = new byte[1 << 16]; // The deflated lines of the current frame, after
+                                                   //    four bytes kept free for an APNG sequence number.
+
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+    private final CRC32 crc = new CRC32();
+
+    private final byte[] header = new byte[26]; // Room for the data of the largest small chunk.
+
+    private int sequence; // The next APNG sequence number.
+
+
+    //------------------------ constructors -----------------------------
+
+
+    /**
+     * Construct a PngEncoder for frames of the given size and colors.
+     * @param palette the colors that may appear in a frame. At most 256 colors.
+     */
+    public PngEncoder(int width, int height, int[] palette) {
+        if (width <= 0 || height <= 0)
+            throw new IllegalArgumentException("Width and height must be greater than zero.");
+        if (palette.length == 0 || palette.length > 256)
+            throw new IllegalArgumentException("The palette must have between 1 and 256 colors.");
+        this.width = width;
+        this.height = height;
+        this.palette = palette.clone();
+        bitDepth = palette.length <= 2 ? 1 : palette.length <= 4 ? 2 : palette.length <= 16 ? 4 : 8;
+        lineBytes = (width * bitDepth + 7) / 8;
+        lines = new byte[height * (lineBytes + 1)];
+        previous = new byte[lineBytes];
+        current = new byte[lineBytes];
+    }
+
+
+    //------------------ other useful public methods ---------------------
+
+
+    /**
+     * Write a frame as a complete PNG image.
+     */
+    public void writeImage(int[] frame, OutputStream out) throws IOException {
+        out.write(SIGNATURE);
+        writeImageHeader(out);
+        writePalette(out);
+        int length = compress(frame);
+        writeChunk(out, "IDAT", compressed, 4, length);
+        writeChunk(out, "IEND", compressed, 0, 0);
+    }
+
+
+    /**
+     * Write the start of an animated PNG. Frames are then added with writeAnimationFrame()
+     * and the file is finished with writeAnimationEnd().
+     * @param frames the number of frames in the animation.
+     */
+    public void writeAnimationStart(OutputStream out, int frames) throws IOException {
+        sequence = 0;
+        out.write(SIGNATURE);
+        writeImageHeader(out);
+        writeAnimationControl(out, frames);
+        writePalette(out);
+    }
+
+
+    /**
+     * Write the animation control chunk, which holds the number of frames. It is
+     * found at getAnimationControlOffset() bytes from the start of the file, so it
+     * can be rewritten once the number of frames is known.
+     */
+    public void writeAnimationControl(OutputStream out, int frames) throws IOException {
+        putInt(header, 0, frames);
+        putInt(header, 4, 0); // loop forever
+        writeChunk(out, "acTL", header, 0, 8);
+    }
+
+
+    /**
+     * Return the offset of the animation control chunk in an animated PNG.
+     */
+    public static int getAnimationControlOffset() {
+        return SIGNATURE.length + 12 + 13;
+    }
+
+
+    /**
+     * Write one frame of an animated PNG.
+     * @param delay how long the frame is shown, in milliseconds.
+     */
+    public void writeAnimationFrame(int[] frame, OutputStream out, int delay) throws IOException {
+        putInt(header, 0, sequence++);
+        putInt(header, 4, width);
+        putInt(header, 8, height);
+        putInt(header, 12, 0); // x offset
+        putInt(header, 16, 0); // y offset
+        header[20] = (byte)(delay >> 8);
+        header[21] = (byte)delay;
+        header[22] = (byte)(1000 >> 8);
+        header[23] = (byte)1000;
+        header[24] = 0; // dispose op: none
+        header[25] = 0; // blend op: source
+        writeChunk(out, "fcTL", header, 0, 26);
+
+        int length = compress(frame);
+        if (sequence == 1) {
+            writeChunk(out, "IDAT", compressed, 4, length);
+        }
+        else { // later frames are stored in fdAT chunks, which start with a sequence number
+            putInt(compressed, 0, sequence++);
+            writeChunk(out, "fdAT", compressed, 0, length + 4);
+        }
+    }
+
+
+    /**
+     * Finish an animated PNG.
+     */
+    public void writeAnimationEnd(OutputStream out) throws IOException {
+        writeChunk(out, "IEND", header, 0, 0);
+    }
+
+
+    /**
+     * Return the bytes of an animation control chunk, for rewriting it in place.
+     */
+    public byte[] animationControlChunk(int frames) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(20);
+        writeAnimationControl(out, frames);
+        return out.toByteArray();
+    }
+
+
+    // private implementation section
+
+
+    private void writeImageHeader(OutputStream out) throws IOException {
+        putInt(header, 0, width);
+        putInt(header, 4, height);
+        header[8] = (byte)bitDepth;
+        header[9] = 3;  // color type: palette
+        header[10] = 0; // compression
+        header[11] = 0; // filter
+        header[12] = 0; // no interlace
+        writeChunk(out, "IHDR", header, 0, 13);
+    }
+
+
+    private void writePalette(OutputStream out) throws IOException {
+        byte[] data = new byte[palette.length * 3];
+        for (int i = 0; i < palette.length; i++) {
+            data[i * 3] = (byte)(palette[i] >> 16);
+            data[i * 3 + 1] = (byte)(palette[i] >> 8);
+            data[i * 3 + 2] = (byte)palette[i];
+        }
+        writeChunk(out, "PLTE", data, 0, data.length);
+    }
+
+
+    /**
+     * Convert a frame to palette indices, filter every line against the line above
+     * it, and deflate the result into the compressed buffer, starting at offset 4.
+     * @return the number of compressed bytes.
+     */
+    private int compress(int[] frame) {
+        int last = palette[0];
+        int lastIndex = 0;
+        int pos = 0;
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            lines[pos++] = 2; // filter type: up
+            if (y > 0 && Arrays.equals(frame, row, row + width, frame, row - width, row)) {
+                // Inside a block of cells most lines repeat the one above, which filters to zeros
+                Arrays.fill(lines, pos, pos + lineBytes, (byte)0);
+                pos += lineBytes;
+                continue;
+            }
+            Arrays.fill(current, (byte)0);
+            int perByte = 8 / bitDepth;
+            for (int x = 0; x < width; x++) {
+                int argb = frame[row + x];
+                if (argb != last) {
+                    lastIndex = indexOf(argb);
+                    last = argb;
+                }
+                int shift = 8 - bitDepth * (x % perByte + 1);
+                current[x / perByte] |= (byte)(lastIndex << shift);
+            }
+            for (int x = 0; x < lineBytes; x++)
+                lines[pos++] = (byte)(current[x] - (y == 0 ? 0 : previous[x]));
+            System.arraycopy(current, 0, previous, 0, lineBytes);
+        }
+
+        deflater.reset();
+        deflater.setInput(lines, 0, pos);
+        deflater.finish();
+        int end = 4;
+        while (!deflater.finished()) {
+            if (end == compressed.length) {
+                byte[] bigger = new byte[compressed.length * 2];
+                System.arraycopy(compressed, 0, bigger, 0, end);
+                compressed = bigger;
+            }
+            end += deflater.deflate(compressed, end, compressed.length - end);
+        }
+        return end - 4;
+    }
+
+
+    private int indexOf(int argb) {
+        for (int i = 0; i < palette.length; i++)
+            if (palette[i] == argb)
+                return i;
+        throw new IllegalArgumentException("The color " + Integer.toHexString(argb) + " is not in the palette.");
+    }
+
+
+    private void writeChunk(OutputStream out, String type, byte[] data, int off, int len) throws IOException {
+        byte[] typeBytes = { (byte)type.charAt(0), (byte)type.charAt(1), (byte)type.charAt(2), (byte)type.charAt(3) };
+        writeInt(out, len);
+        out.write(typeBytes);
+        out.write(data, off, len);
+        crc.reset();
+        crc.update(typeBytes);
+        crc.update(data, off, len);
+        writeInt(out, (int)crc.getValue());
+    }
+
+
+    private static void writeInt(OutputStream out, int v) throws IOException {
+        out.write(v >>> 24);
+        out.write(v >>> 16);
+        out.write(v >>> 8);
+        out.write(v);
+    }
+
+
+    private static void putInt(byte[] b, int off, int v) {
+        b[off] = (byte)(v >>> 24);
+        b[off + 1] = (byte)(v >>> 16);
+        b[off + 2] = (byte)(v >>> 8);
+        b[off + 3] = (byte)v;
+    }
+
+
+} // end of class PngEncoder
@@ -0,0 +1,865 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A ReplayArchive stores GameRecords in a directory, in segments of up to
+ * SEGMENT_RECORDS records, so that millions of recorded games can be searched by
+ * their outcome and any of them played again.
+ *
+ * Each segment is two files. The data file holds the seeds and inputs of the games,
+ * compressed in blocks of BLOCK_RECORDS records. The index file holds the outcome of
+ * every game as columns, one array per field: all the scores, then all the lengths,
+ * and so on, followed by where each block starts in the data file. Index files are
+ * memory-mapped. A search with find() or count() reads only the columns of the
+ * conditions that have been set, the death causes first, and each column only for
+ * the records that matched the ones before it. Nothing is decompressed until a
+ * record is read with read().
+ *
+ * Records are numbered in the order they were appended: record i of segment s has the
+ * id s * SEGMENT_RECORDS + i. Records are appended to the last segment until it is
+ * full, and a segment gets its index file when it is full or when the archive is
+ * closed; until then it is searched in memory, and opening the archive again takes
+ * the index file of the last segment back into memory to go on appending to it.
+ *
+ * Every block also holds the outcome of its games, so a data file without an index
+ * file, left behind if the program stopped without closing the archive, is read
+ * again block by block when the archive is opened and gets its index back. Only the
+ * records of the block that was still being filled are lost, together with those of
+ * a block that was being written again after the archive was reopened.
+ *
+ * All numbers in the files are big-endian. The layout of an index file is:
+ *
+ *     header   "SNKR", version (int), number of records (int), number of blocks (int)
+ *     columns  scores (ints), lengths (ints), durations (ints), death causes (bytes),
+ *              padding to a multiple of 8 bytes
+ *     blocks   offset of every block in the data file, and the size of the file (longs)
+ *
+ * A record in a block is its rows, columns, score, length and duration as varints,
+ * its death cause as a byte, its number of inputs as a varint, its seed as 8 bytes,
+ * then every input as a varint holding the ticks since the last input, times four,
+ * plus the direction.
+ */
+
+public class ReplayArchive implements AutoCloseable {
+
+
+    public static final int SEGMENT_RECORDS = 1 << 20; // The most records in one segment.
+    public static final int BLOCK_RECORDS = 256; // Records compressed together.
+
+    private static final int MAGIC = 0x534E4B52; // "SNKR"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 16;
+
+
+    //------------------ private instance variables --------------------
+
+
+    private final Path directory; // Where the segment files are.
+
+    private final List<Segment> segments = new ArrayList<>(); // Segments with an index file.
+
+    // The segment being appended to
+    private int number; // Its number, or the number of the next one if data is null.
+    private FileChannel data; // Its data file, or null if no segment has been started.
+    private int count; // The number of records in it.
+    private int[] scores = new int[1024], lengths = new int[1024], durations = new int[1024];
+    private byte[] causes = new byte[1024];
+    private long[] blocks = new long[64]; // The offsets of its blocks in the data file.
+    private int blockCount;
+    private long dataSize; // The size of its data file.
+
+    private byte[] block = new byte[1 << 16]; // The uncompressed records of the block
+    private int blockLength;                  //    being filled.
+
+    private byte[] compressed = new byte[1 << 16]; // Room for a compressed block.
+
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final Inflater inflater = new Inflater();
+
+    private int cursor; // Where decoding has got to in the block being read.
+
+    private int matchCount; // The number of records found by the last select().
+
+    private int inflatedLength; // The size of the block last decompressed by inflate().
+
+    private long discarded; // Bytes cut from damaged data files by recover().
+
+    private boolean closed;
+
+
+    //------------------------ constructors -----------------------------
+
+
+    /**
+     * Open the archive in a directory, creating the directory if needed. Only the
+     * index files are read, apart from the data files that have lost theirs and the
+     * last block of the last segment.
+     * @throws IOException if a file cannot be read or is not part of an archive.
+     */
+    public ReplayArchive(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+        TreeSet<Integer> found = new TreeSet<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "segment-*")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".tmp")) {
+                    Files.delete(file); // an index file that was never finished
+                    continue;
+                }
+                int dot = name.indexOf('.');
+                if (dot < 0)
+                    continue;
+                try {
+                    found.add(Integer.parseInt(name.substring(8, dot)));
+                }
+                catch (NumberFormatException e) {
+                }
+            }
+        }
+        try {
+            for (int n : found) {
+                if (Files.exists(indexFile(n))) {
+                    segments.add(new Segment(n));
+                }
+                else {
+                    recover(n);
+                    if (n != found.last() && count > 0) {
+                        seal();
+                    }
+                    else if (n != found.last()) {
+                        data.close();
+                        data = null;
+                        Files.delete(dataFile(n));
+                    }
+                }
+            }
+            if (data == null && !segments.isEmpty() && segments.get(segments.size() - 1).count < SEGMENT_RECORDS)
+                resume(segments.remove(segments.size() - 1));
+        }
+        catch (IOException e) {
+            for (Segment s : segments)
+                s.close();
+            if (data != null)
+                data.close();
+            deflater.end();
+            inflater.end();
+            throw e;
+        }
+        if (data == null)
+            number = found.isEmpty() ? 0 : found.last() + 1; // a number no file has used yet
+    }
+
+
+    //--------- methods for getting archive properties ----------
+
+
+    /**
+     * Return the number of records in the archive.
+     */
+    public synchronized long getRecordCount() {
+        long total = count;
+        for (Segment s : segments)
+            total += s.count;
+        return total;
+    }
+
+
+    /**
+     * Return the number of bytes that were cut from the ends of data files without
+     * an index file when the archive was opened, because they did not hold whole blocks.
+     */
+    public synchronized long getDiscardedBytes() {
+        return discarded;
+    }
+
+
+    //------------------ other useful public methods ---------------------
+
+
+    /**
+     * Add a record to the archive.
+     * @return the id of the record.
+     * @throws IOException if the record cannot be written.
+     */
+    public synchronized long append(GameRecord record) throws IOException {
+        if (closed)
+            throw new IllegalStateException("The archive is closed.");
+        if (data == null)
+            startSegment();
+
+        ensureColumns(count + 1);
+        scores[count] = record.getScore();
+        lengths[count] = record.getLength();
+        durations[count] = record.getDuration();
+        causes[count] = record.getDeathCause();
+
+        ensureBlock(39 + 5 * record.getInputCount());
+        writeVarint(record.getRows());
+        writeVarint(record.getColumns());
+        writeVarint(record.getScore());
+        writeVarint(record.getLength());
+        writeVarint(record.getDuration());
+        block[blockLength++] = record.getDeathCause();
+        writeVarint(record.getInputCount());
+        long seed = record.getSeed();
+        for (int shift = 56; shift >= 0; shift -= 8)
+            block[blockLength++] = (byte)(seed >>> shift);
+        int tick = 0;
+        for (int i = 0; i < record.getInputCount(); i++) {
+            writeVarint((record.getInputTick(i) - tick) << 2 | record.getInputDir(i) & 3);
+            tick = record.getInputTick(i);
+        }
+
+        long id = (long)number * SEGMENT_RECORDS + count;
+        count++;
+        if (count % BLOCK_RECORDS == 0)
+            writeBlock();
+        if (count == SEGMENT_RECORDS)
+            seal();
+        return id;
+    }
+
+
+    /**
+     * Return the ids of every record that matches a query, in the order they were appended.
+     */
+    public synchronized long[] find(Query query) {
+        long[] ids = new long[64];
+        int found = 0;
+        for (int k = 0; k <= segments.size(); k++) {
+            int n = k < segments.size() ? segments.get(k).number : number;
+            int[] matched = select(query, k);
+            if (found + matchCount > ids.length)
+                ids = Arrays.copyOf(ids, Math.max(ids.length * 2, found + matchCount));
+            for (int m = 0; m < matchCount; m++)
+                ids[found++] = (long)n * SEGMENT_RECORDS + (matched == null ? m : matched[m]);
+        }
+        return Arrays.copyOf(ids, found);
+    }
+
+
+    /**
+     * Return the number of records that match a query.
+     */
+    public synchronized long count(Query query) {
+        long found = 0;
+        for (int k = 0; k <= segments.size(); k++) {
+            select(query, k);
+            found += matchCount;
+        }
+        return found;
+    }
+
+
+    /**
+     * Read a record. Only the block holding it is decompressed.
+     * @throws IOException if the record cannot be read or is damaged.
+     */
+    public synchronized GameRecord read(long id) throws IOException {
+        int n = (int)(id / SEGMENT_RECORDS);
+        int i = (int)(id % SEGMENT_RECORDS);
+        if (id >= 0 && data != null && n == number && i < count) {
+            if (i / BLOCK_RECORDS == blockCount)
+                return decode(block, i % BLOCK_RECORDS);
+            byte[] bytes = readBlock(data, blocks[i / BLOCK_RECORDS], blocks[i / BLOCK_RECORDS + 1]);
+            return decode(bytes, i % BLOCK_RECORDS);
+        }
+        for (Segment s : segments) {
+            if (id >= 0 && s.number == n && i < s.count) {
+                int b = i / BLOCK_RECORDS;
+                byte[] bytes = readBlock(s.channel(), s.blocks.get(b), s.blocks.get(b + 1));
+                return decode(bytes, i % BLOCK_RECORDS);
+            }
+        }
+        throw new IndexOutOfBoundsException("There is no record " + id + " in the archive.");
+    }
+
+
+    /**
+     * Write the index of the segment being appended to, and close every file.
+     * Records that were already read stay usable.
+     */
+    public synchronized void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        if (data != null && count > 0) {
+            seal();
+        }
+        else if (data != null) {
+            data.close();
+            Files.deleteIfExists(dataFile(number));
+        }
+        for (Segment s : segments)
+            s.close();
+        deflater.end();
+        inflater.end();
+    }
+
+
+    /**
+     * A Query picks records by their outcome. Every condition that has not been set
+     * matches every record.
+     */
+    public static class Query {
+
+        private int minScore = Integer.MIN_VALUE, maxScore = Integer.MAX_VALUE;
+        private int minLength = Integer.MIN_VALUE, maxLength = Integer.MAX_VALUE;
+        private int minDuration = Integer.MIN_VALUE, maxDuration = Integer.MAX_VALUE;
+        private int deathCause = -1;
+
+        /**
+         * Match only records with a score of at least min.
+         */
+        public Query minScore(int min) {
+            minScore = min;
+            return this;
+        }
+
+        /**
+         * Match only records with a score of at most max.
+         */
+        public Query maxScore(int max) {
+            maxScore = max;
+            return this;
+        }
+
+        /**
+         * Match only records whose snake ended at least min squares long.
+         */
+        public Query minLength(int min) {
+            minLength = min;
+            return this;
+        }
+
+        /**
+         * Match only records whose snake ended at most max squares long.
+         */
+        public Query maxLength(int max) {
+            maxLength = max;
+            return this;
+        }
+
+        /**
+         * Match only records of at least min ticks.
+         */
+        public Query minDuration(int min) {
+            minDuration = min;
+            return this;
+        }
+
+        /**
+         * Match only records of at most max ticks.
+         */
+        public Query maxDuration(int max) {
+            maxDuration = max;
+            return this;
+        }
+
+        /**
+         * Match only records that ended the given way: SnakeEngine.WALL, SnakeEngine.SNAKE,
+         * or SnakeEngine.EMPTY for games that had not ended.
+         */
+        public Query deathCause(byte cause) {
+            deathCause = cause;
+            return this;
+        }
+
+        boolean hasScore() {
+            return minScore != Integer.MIN_VALUE || maxScore != Integer.MAX_VALUE;
+        }
+
+        boolean hasLength() {
+            return minLength != Integer.MIN_VALUE || maxLength != Integer.MAX_VALUE;
+        }
+
+        boolean hasDuration() {
+            return minDuration != Integer.MIN_VALUE || maxDuration != Integer.MAX_VALUE;
+        }
+    }
+
+
+    // private implementation section
+
+
+    /**
+     * A segment with an index file. The columns are views of the mapped file. The
+     * data file is only opened once a record of the segment is read.
+     */
+    private final class Segment {
+        final int number;
+        final int count;
+        private FileChannel data;
+        final IntBuffer scores, lengths, durations;
+        final ByteBuffer causes;
+        final LongBuffer blocks;
+
+        Segment(int number) throws IOException {
+            this.number = number;
+            Path file = indexFile(number);
+            MappedByteBuffer index;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                index = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            if (index.capacity() < HEADER_SIZE || index.getInt(0) != MAGIC)
+                throw new IOException(file + " is not a replay index.");
+            if (index.getInt(4) != VERSION)
+                throw new IOException(file + " has an unsupported replay index version.");
+            count = index.getInt(8);
+            int blockCount = index.getInt(12);
+            long columns = HEADER_SIZE + 13L * count;
+            long padded = (columns + 7) & ~7L;
+            if (count < 0 || count > SEGMENT_RECORDS || blockCount != (count + BLOCK_RECORDS - 1) / BLOCK_RECORDS
+                    || padded + 8L * (blockCount + 1) != index.capacity())
+                throw new IOException(file + " is damaged.");
+            scores = index.slice(HEADER_SIZE, 4 * count).asIntBuffer();
+            lengths = index.slice(HEADER_SIZE + 4 * count, 4 * count).asIntBuffer();
+            durations = index.slice(HEADER_SIZE + 8 * count, 4 * count).asIntBuffer();
+            causes = index.slice(HEADER_SIZE + 12 * count, count);
+            blocks = index.slice((int)padded, 8 * (blockCount + 1)).asLongBuffer();
+            if (Files.size(dataFile(number)) < blocks.get(blockCount))
+                throw new IOException(dataFile(number) + " is shorter than its index says.");
+        }
+
+        FileChannel channel() throws IOException {
+            if (data == null)
+                data = FileChannel.open(dataFile(number), StandardOpenOption.READ);
+            return data;
+        }
+
+        void close() throws IOException {
+            if (data != null)
+                data.close();
+        }
+    }
+
+
+    /**
+     * Find the records of segment k that match a query, or of the segment being
+     * appended to if k is the number of sealed segments. The death causes are looked
+     * at first, then the scores, lengths and durations, each only for the records that
+     * matched so far, and a column is not read at all if its condition is not set.
+     * @return the indexes of the records in the segment, with their number in
+     *     matchCount, or null if every record matches.
+     */
+    private int[] select(Query query, int k) {
+        Segment s = k < segments.size() ? segments.get(k) : null;
+        int n = s != null ? s.count : count;
+        int[] matched = null;
+        matchCount = n;
+        if (query.deathCause >= 0)
+            matched = narrow(s != null ? s.causes : ByteBuffer.wrap(causes), (byte)query.deathCause,
+                             matched);
+        if (query.hasScore())
+            matched = narrow(s != null ? s.scores : IntBuffer.wrap(scores), query.minScore, query.maxScore,
+                             matched);
+        if (query.hasLength())
+            matched = narrow(s != null ? s.lengths : IntBuffer.wrap(lengths), query.minLength,
+                             query.maxLength, matched);
+        if (query.hasDuration())
+            matched = narrow(s != null ? s.durations : IntBuffer.wrap(durations), query.minDuration,
+                             query.maxDuration, matched);
+        return matched;
+    }
+
+
+    /**
+     * Keep the records whose value in a column is between min and max. Matched
+     * holds the indexes of the records still in, or is null for the first
+     * matchCount records; it is reused for the ones kept.
+     */
+    private int[] narrow(IntBuffer column, int min, int max, int[] matched) {
+        int found = 0;
+        if (matched == null) {
+            int n = matchCount;
+            matched = new int[Math.min(n, 1024)];
+            for (int i = 0; i < n; i++) {
+                int value = column.get(i);
+                if (value >= min && value <= max) {
+                    if (found == matched.length)
+                        matched = Arrays.copyOf(matched, found * 2);
+                    matched[found++] = i;
+                }
+            }
+        }
+        else {
+            for (int m = 0; m < matchCount; m++) {
+                int value = column.get(matched[m]);
+                if (value >= min && value <= max)
+                    matched[found++] = matched[m];
+            }
+        }
+        matchCount = found;
+        return matched;
+    }
+
+
+    /**
+     * Keep the records whose value in a column is the given one, as narrow() above.
+     */
+    private int[] narrow(ByteBuffer column, byte wanted, int[] matched) {
+        int found = 0;
+        if (matched == null) {
+            int n = matchCount;
+            matched = new int[Math.min(n, 1024)];
+            for (int i = 0; i < n; i++) {
+                if (column.get(i) == wanted) {
+                    if (found == matched.length)
+                        matched = Arrays.copyOf(matched, found * 2);
+                    matched[found++] = i;
+                }
+            }
+        }
+        else {
+            for (int m = 0; m < matchCount; m++) {
+                if (column.get(matched[m]) == wanted)
+                    matched[found++] = matched[m];
+            }
+        }
+        matchCount = found;
+        return matched;
+    }
+
+
+    private Path dataFile(int n) {
+        return directory.resolve(String.format("segment-%06d.dat", n));
+    }
+
+
+    private Path indexFile(int n) {
+        return directory.resolve(String.format("segment-%06d.idx", n));
+    }
+
+
+    private void startSegment() throws IOException {
+        data = FileChannel.open(dataFile(number), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                StandardOpenOption.READ, StandardOpenOption.TRUNCATE_EXISTING);
+        count = 0;
+        blockCount = 0;
+        blocks[0] = 0;
+        dataSize = 0;
+        blockLength = 0;
+    }
+
+
+    /**
+     * Make a data file without an index file the segment being appended to, reading
+     * the outcomes of its records back from its blocks. Reading stops at the first
+     * block that is damaged, such as one that was only half written, and the file
+     * is cut there. A last block of fewer than BLOCK_RECORDS records becomes the
+     * block being filled again.
+     */
+    private void recover(int n) throws IOException {
+        number = n;
+        data = FileChannel.open(dataFile(n), StandardOpenOption.WRITE, StandardOpenOption.READ);
+        count = 0;
+        blockCount = 0;
+        blocks[0] = 0;
+        dataSize = 0;
+        blockLength = 0;
+        long size = data.size();
+        if (size > Integer.MAX_VALUE)
+            throw new IOException(dataFile(n) + " is too large to be a replay data file.");
+        ByteBuffer file = data.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        long end = 0;
+        while (dataSize < size) {
+            byte[] bytes;
+            try {
+                bytes = inflate(file.slice((int)dataSize, (int)(size - dataSize)));
+            }
+            catch (IOException e) {
+                break;
+            }
+            int records = scanBlock(bytes, inflatedLength);
+            if (records <= 0 || records > BLOCK_RECORDS)
+                break;
+            end = dataSize + inflater.getBytesRead();
+            count += records;
+            if (records < BLOCK_RECORDS) {
+                ensureBlock(inflatedLength);
+                System.arraycopy(bytes, 0, block, 0, inflatedLength);
+                blockLength = inflatedLength;
+                break;
+            }
+            dataSize = end;
+            blockCount++;
+            if (blockCount + 1 > blocks.length)
+                blocks = Arrays.copyOf(blocks, blocks.length * 2);
+            blocks[blockCount] = dataSize;
+        }
+        if (end < size) {
+            discarded += size - end;
+            data.truncate(end);
+        }
+    }
+
+
+    /**
+     * Make a segment with an index file the segment being appended to again. Its
+     * columns are copied into memory, its last block is decompressed if it is not
+     * full, and its index file is deleted, since it will be out of date as soon as a
+     * record is appended; if the program stops, the segment is recovered from its
+     * data file instead.
+     */
+    private void resume(Segment s) throws IOException {
+        number = s.number;
+        count = s.count;
+        ensureColumns(count);
+        s.scores.duplicate().get(scores, 0, count);
+        s.lengths.duplicate().get(lengths, 0, count);
+        s.durations.duplicate().get(durations, 0, count);
+        s.causes.duplicate().get(causes, 0, count);
+        blockCount = (count + BLOCK_RECORDS - 1) / BLOCK_RECORDS;
+        if (blockCount + 2 > blocks.length)
+            blocks = new long[blockCount + 2];
+        s.blocks.duplicate().get(blocks, 0, blockCount + 1);
+        s.close();
+        data = FileChannel.open(dataFile(number), StandardOpenOption.WRITE, StandardOpenOption.READ);
+        blockLength = 0;
+        if (count % BLOCK_RECORDS != 0) {
+            blockCount--;
+            byte[] bytes = readBlock(data, blocks[blockCount], blocks[blockCount + 1]);
+            ensureBlock(inflatedLength);
+            System.arraycopy(bytes, 0, block, 0, inflatedLength);
+            blockLength = inflatedLength;
+        }
+        dataSize = blocks[blockCount];
+        Files.delete(indexFile(number));
+    }
+
+
+    /**
+     * Compress the block being filled and append it to the data file.
+     */
+    private void writeBlock() throws IOException {
+        deflater.reset();
+        deflater.setInput(block, 0, blockLength);
+        deflater.finish();
+        int size = 0;
+        while (!deflater.finished()) {
+            if (size == compressed.length)
+                compressed = Arrays.copyOf(compressed, size * 2);
+            size += deflater.deflate(compressed, size, compressed.length - size);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(compressed, 0, size);
+        while (buffer.hasRemaining())
+            data.write(buffer, dataSize + buffer.position());
+        dataSize += size;
+        blockCount++;
+        if (blockCount + 1 > blocks.length)
+            blocks = Arrays.copyOf(blocks, blocks.length * 2);
+        blocks[blockCount] = dataSize;
+        blockLength = 0;
+    }
+
+
+    /**
+     * Finish the segment being appended to: write its last block and its index
+     * file, and start searching it through the index.
+     */
+    private void seal() throws IOException {
+        if (blockLength > 0)
+            writeBlock();
+        long columns = HEADER_SIZE + 13L * count;
+        int padded = (int)((columns + 7) & ~7L);
+        ByteBuffer index = ByteBuffer.allocate(padded + 8 * (blockCount + 1));
+        index.putInt(MAGIC).putInt(VERSION).putInt(count).putInt(blockCount);
+        index.asIntBuffer().put(scores, 0, count);
+        index.position(index.position() + 4 * count);
+        index.asIntBuffer().put(lengths, 0, count);
+        index.position(index.position() + 4 * count);
+        index.asIntBuffer().put(durations, 0, count);
+        index.position(index.position() + 4 * count);
+        index.put(causes, 0, count);
+        index.position(padded);
+        index.asLongBuffer().put(blocks, 0, blockCount + 1);
+        index.position(0);
+
+        data.truncate(dataSize); // a block written again after resume() may have been shorter
+        data.force(false);
+        data.close();
+        data = null;
+        Path temporary = directory.resolve(indexFile(number).getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (index.hasRemaining())
+                out.write(index);
+            out.force(false);
+        }
+        Files.move(temporary, indexFile(number)); // the segment only counts once its index is complete
+        segments.add(new Segment(number));
+        number++;
+        count = 0;
+        blockCount = 0;
+        blockLength = 0;
+    }
+
+
+    private byte[] readBlock(FileChannel channel, long from, long to) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int)(to - from));
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, from + buffer.position()) < 0)
+                throw new IOException("A replay data file ends too soon.");
+        }
+        return inflate(buffer.flip());
+    }
+
+
+    /**
+     * Decompress the block at the start of some bytes, which may be followed by
+     * others. Its size is left in inflatedLength, and inflater.getBytesRead() tells
+     * how many bytes it took.
+     */
+    private byte[] inflate(ByteBuffer input) throws IOException {
+        inflater.reset();
+        inflater.setInput(input);
+        byte[] bytes = new byte[Math.max(1024, Math.min(input.remaining(), 1 << 16) * 4)];
+        int size = 0;
+        try {
+            while (!inflater.finished()) {
+                if (size == bytes.length)
+                    bytes = Arrays.copyOf(bytes, size * 2);
+                int n = inflater.inflate(bytes, size, bytes.length - size);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    throw new IOException("A block of a replay data file is damaged.");
+                size += n;
+            }
+        }
+        catch (DataFormatException e) {
+            throw new IOException("A block of a replay data file is damaged: " + e.getMessage());
+        }
+        inflatedLength = size;
+        return bytes;
+    }
+
+
+    /**
+     * Decode the record that comes after skip others in a block.
+     */
+    private GameRecord decode(byte[] bytes, int skip) throws IOException {
+        cursor = 0;
+        try {
+            for (int r = 0; r < skip; r++)
+                skipRecord(bytes);
+            int rows = readVarint(bytes);
+            int columns = readVarint(bytes);
+            int score = readVarint(bytes);
+            int length = readVarint(bytes);
+            int duration = readVarint(bytes);
+            byte cause = bytes[cursor++];
+            int inputs = readVarint(bytes);
+            long seed = 0;
+            for (int b = 0; b < 8; b++)
+                seed = seed << 8 | bytes[cursor++] & 0xFF;
+            int[] inputTicks = new int[inputs];
+            byte[] inputDirs = new byte[inputs];
+            int tick = 0;
+            for (int i = 0; i < inputs; i++) {
+                int v = readVarint(bytes);
+                tick += v >>> 2;
+                inputTicks[i] = tick;
+                inputDirs[i] = (byte)(v & 3);
+            }
+            return new GameRecord(rows, columns, seed, inputTicks, inputDirs, score, length, duration, cause);
+        }
+        catch (ArrayIndexOutOfBoundsException | IllegalArgumentException | NegativeArraySizeException e) {
+            throw new IOException("A record of a replay data file is damaged.");
+        }
+    }
+
+
+    /**
+     * Read the outcomes of the records of a block into the columns, after the
+     * records of the segment already counted.
+     * @return the number of records in the block, or -1 if it is damaged.
+     */
+    private int scanBlock(byte[] bytes, int size) {
+        cursor = 0;
+        int records = 0;
+        try {
+            while (cursor < size && records <= BLOCK_RECORDS) {
+                ensureColumns(count + records + 1);
+                int start = cursor;
+                readVarint(bytes);
+                readVarint(bytes);
+                scores[count + records] = readVarint(bytes);
+                lengths[count + records] = readVarint(bytes);
+                durations[count + records] = readVarint(bytes);
+                causes[count + records] = bytes[cursor++];
+                cursor = start;
+                skipRecord(bytes);
+                records++;
+            }
+        }
+        catch (ArrayIndexOutOfBoundsException e) {
+            return -1;
+        }
+        return cursor == size ? records : -1;
+    }
+
+
+    private void skipRecord(byte[] bytes) {
+        for (int v = 0; v < 5; v++)
+            readVarint(bytes);
+        cursor++;
+        int inputs = readVarint(bytes);
+        cursor += 8;
+        for (int i = 0; i < inputs; i++)
+            readVarint(bytes);
+    }
+
+
+    private int readVarint(byte[] bytes) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = bytes[cursor++];
+            value |= (b & 0x7F) << shift;
+            if (b >= 0)
+                return value;
+        }
+    }
+
+
+    private void writeVarint(int value) {
+        while ((value & ~0x7F) != 0) {
+            block[blockLength++] = (byte)(value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        block[blockLength++] = (byte)value;
+    }
+
+
+    private void ensureColumns(int n) {
+        if (n > scores.length) {
+            int size = Math.max(scores.length * 2, n);
+            scores = Arrays.copyOf(scores, size);
+            lengths = Arrays.copyOf(lengths, size);
+            durations = Arrays.copyOf(durations, size);
+            causes = Arrays.copyOf(causes, size);
+        }
+    }
+
+
+    private void ensureBlock(int extra) {
+        if (blockLength + extra > block.length)
+            block = Arrays.copyOf(block, Math.max(block.length * 2, blockLength + extra));
+    }
+
+
+} // end of class ReplayArchive
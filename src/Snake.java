@@ -49,6 +49,14 @@ public class Snake {
     }
 
 
+    /**
+     * Return the direction the snake is moving in.
+     */
+    public int getDir() {
+        return dir;
+    }
+
+
     //------------------ other useful public methods ---------------------
 
 
@@ -2,7 +2,6 @@ import javafx.application.Application;
 import javafx.application.Platform;
 
 import javafx.scene.layout.StackPane;
-import javafx.scene.layout.Pane;
 import javafx.scene.Scene;
 import javafx.scene.input.KeyCode;
 import javafx.stage.Stage;
@@ -23,12 +22,6 @@ public class SnakeApp extends Application {
     private static Stage window; // The application running the snake window (if one is open).
     private static SnakeCanvas canvas; // A component that actually manages and displays the rectangles.
 
-    enum Speed {
-        SLOW,
-        MEDIUM,
-        FAST
-      }
-
     //------------------ private instance variables: GAME SETTINGS --------------------
 
     private static Speed SPEED = Speed.MEDIUM; // The speed of the snake.
@@ -132,15 +125,16 @@ public class SnakeApp extends Application {
             canvas = new SnakeCanvas(Integer.parseInt(params.get(0)),Integer.parseInt(params.get(1)),
                     Integer.parseInt(params.get(2)),Integer.parseInt(params.get(3)));
         canvas.forceRedraw();
-        Pane pane = new Pane(canvas);
-        StackPane root = new StackPane(pane);
+        StackPane root = new StackPane(canvas); // resizes the canvas to fill the window
         root.setStyle("-fx-border-width: 2px; -fx-border-color: #333");
         Scene scene = new Scene(root);
         stage.setScene(scene);
         stage.setOnCloseRequest( e -> { System.exit(0); } );
         stage.setTitle("snake");
-        stage.setResizable(false);
+        stage.setResizable(true);
         stage.show();
+        stage.outputScaleXProperty().addListener( e -> canvas.forceRedraw() );
+        stage.outputScaleYProperty().addListener( e -> canvas.forceRedraw() );
 
         scene.setOnKeyPressed( e -> {
             // change the direction of the snake on key press
@@ -180,17 +174,7 @@ public class SnakeApp extends Application {
             canvas.updateGrid();
             canvas.getPlaying();
 
-            switch (SPEED) {
-                case SLOW -> {
-                    SnakeApp.delay(300);
-                }
-                case MEDIUM -> {
-                    SnakeApp.delay(150);
-                }
-                case FAST -> {
-                    SnakeApp.delay(75);
-                }
-            }
+            SnakeApp.delay(SPEED.getDelay());
 
             if (!canvas.getPlaying()) {
                 canvas.gameOver();
@@ -42,6 +42,21 @@ public class SnakeCanvas extends Canvas {
 
     private GraphicsContext g; // The graphics context for drawing on this canvas.
 
+    private GameEventBus events; // Receives the events of the game, if set.
+
+    private long ticks; // The number of times the snake has moved in the current game.
+
+    private final double preferredWidth, preferredHeight; // The size the canvas asks its container for.
+
+    private double[] rowEdges, columnEdges; // Where each row and column of rectangles starts, plus
+                                            //    the far edge of the last one, rounded to device
+                                            //    pixels. Only recomputed when the size changes.
+
+    private double pixel = 1; // The size of one device pixel: 0.5 on a display scaled to 200%.
+
+    private boolean redrawPending; // True if a full redraw has been scheduled on the application
+                                   //    thread and has not happened yet.
+
 
     //------------------------ constructors -----------------------------
 
@@ -95,9 +110,16 @@ public class SnakeCanvas extends Canvas {
         snake = new Snake(rows, columns);
         foodList = new ArrayList<FoodData>();
         addFood();
-        setWidth(preferredBlockWidth*columns);
-        setHeight(preferredBlockHeight*rows);
+        preferredWidth = preferredBlockWidth*columns;
+        preferredHeight = preferredBlockHeight*rows;
+        setWidth(preferredWidth);
+        setHeight(preferredHeight);
         g = getGraphicsContext2D();
+        rowEdges = new double[rows + 1];
+        columnEdges = new double[columns + 1];
+        computeEdges();
+        widthProperty().addListener(e -> scheduleRedraw());
+        heightProperty().addListener(e -> scheduleRedraw());
     }
 
 
@@ -149,6 +171,14 @@ public class SnakeCanvas extends Canvas {
         playing = bool;
     }
 
+    /**
+     * Publish the events of the game (moves, food, deaths and restarts) on a bus.
+     * Pass null to stop publishing.
+     */
+    public void setEvents(GameEventBus events) {
+        this.events = events;
+    }
+
 
     //------------------ other useful public methods ---------------------
 
@@ -168,6 +198,7 @@ public class SnakeCanvas extends Canvas {
         for (int i = 1 ; i < snake.getSnakeArray().size() ; i++) {
             if (snake.getSnakeArray().get(i).sameLocation(snake.getSnakeArray().get(0))) {
                 playing = false;
+                publish(GameEventType.DIED, snake.getSnakeArray().get(1), SnakeEngine.SNAKE); // where the head was, as in SnakeEngine
                 return;
             }
         }
@@ -178,16 +209,21 @@ public class SnakeCanvas extends Canvas {
                 || snake.getSnakeArray().get(0).getX() >= columns
                 || snake.getSnakeArray().get(0).getX() < 0) { // going off the board, game over
                     playing = false;
+                    publish(GameEventType.DIED, snake.getSnakeArray().get(1), SnakeEngine.WALL); // the head is off the board
                     return;
         }
+        ticks++;
+        publish(GameEventType.MOVED, snake.getSnakeArray().get(0), snake.getDir());
 
         // Check to see if the snake hit any food item in the foodList
         if (!foodList.isEmpty()) {
             for (int i = 0 ; i < foodList.size() ; i++) {
                 
                 if (foodList.get(i).sameLocation(snake.getSnakeArray().get(0))) { // the snake ate the food
-                    if (foodList.get(i) instanceof FoodData myFood)
+                    if (foodList.get(i) instanceof FoodData myFood) {
                         score += myFood.getValue();
+                        publish(GameEventType.ATE, myFood, myFood.getValue());
+                    }
                     foodList.remove(foodList.get(i));
                     snake.eat();
 
@@ -232,7 +268,9 @@ public class SnakeCanvas extends Canvas {
         grid = new Data[rows][columns];
         snake = new Snake(rows, columns);
         score = 0;
+        ticks = 0;
         foodList = new ArrayList<FoodData>();
+        publish(GameEventType.RESTARTED, snake.getSnakeArray().get(0), 0);
         addFood();
 
         playing = true;
@@ -249,11 +287,64 @@ public class SnakeCanvas extends Canvas {
 
 
     /**
-     * This method can be called to force redrawing of the entire canvas. This is only
-     * called when the game first launches. All other redraws only happen from main().
+     * This method can be called to force redrawing of the entire canvas. It is called
+     * when the game first launches, and when the window moves to a display with a
+     * different scale. Other redraws happen from main(), or after a resize.
      */
     final public void forceRedraw() {
-        drawBoard();
+        scheduleRedraw();
+    }
+
+
+    /**
+     * Let the window resize the canvas, so that the board grows and shrinks with it.
+     */
+    @Override
+    public boolean isResizable() {
+        return true;
+    }
+
+
+    @Override
+    public double prefWidth(double height) {
+        return preferredWidth;
+    }
+
+
+    @Override
+    public double prefHeight(double width) {
+        return preferredHeight;
+    }
+
+
+    @Override
+    public double minWidth(double height) {
+        return columns;
+    }
+
+
+    @Override
+    public double minHeight(double width) {
+        return rows;
+    }
+
+
+    @Override
+    public double maxWidth(double height) {
+        return Double.MAX_VALUE;
+    }
+
+
+    @Override
+    public double maxHeight(double width) {
+        return Double.MAX_VALUE;
+    }
+
+
+    @Override
+    public void resize(double width, double height) {
+        setWidth(width);
+        setHeight(height);
     }
 
 
@@ -286,6 +377,59 @@ public class SnakeCanvas extends Canvas {
         } while (inFoodList || inSnake);
         
         foodList.add(newFood);
+        publish(GameEventType.SPAWNED, newFood, 0);
+    }
+
+
+    // private implementation section
+
+
+    /**
+     * Publish an event about a location on the grid, if there is an event bus.
+     * The cell index is row * columns + column, as in SnakeEngine.
+     */
+    private void publish(GameEventType type, Data where, int value) {
+        if (events != null)
+            events.publish(type, 0, ticks, where.getY() * columns + where.getX(), value);
+    }
+
+
+    /**
+     * Redraw the whole board once the application thread is free. A resize changes
+     * the width and then the height, and dragging the edge of the window resizes it
+     * many times a second, so calls are coalesced: however many come in before the
+     * redraw runs, the edges are computed and the board is drawn only once.
+     */
+    private void scheduleRedraw() {
+        if (redrawPending)
+            return;
+        redrawPending = true;
+        Platform.runLater( () -> {
+            redrawPending = false;
+            computeEdges();
+            drawBoard();
+            if (!playing)
+                drawGameOver();
+        } );
+    }
+
+
+    /**
+     * Compute where every row and column of rectangles starts for the current size
+     * of the canvas, on whole device pixels so that the edges stay sharp on a HiDPI
+     * display.
+     */
+    private void computeEdges() {
+        double scaleX = 1, scaleY = 1;
+        if (getScene() != null && getScene().getWindow() != null) {
+            scaleX = getScene().getWindow().getOutputScaleX();
+            scaleY = getScene().getWindow().getOutputScaleY();
+        }
+        for (int r = 0; r <= rows; r++)
+            rowEdges[r] = Math.round(getHeight() * scaleY * r / rows) / scaleY;
+        for (int c = 0; c <= columns; c++)
+            columnEdges[c] = Math.round(getWidth() * scaleX * c / columns) / scaleX;
+        pixel = 1 / Math.max(scaleX, scaleY);
     }
 
 
@@ -324,12 +468,10 @@ public class SnakeCanvas extends Canvas {
     private void drawOneSquare(int row, int col) {
 
            // only called from two previous methods
-        double rowHeight = getHeight() / rows;
-        double colWidth = getWidth() / columns;
-        int y = (int)Math.round(rowHeight*row);
-        int h = Math.max(1, (int)Math.round(rowHeight*(row+1)) - y);
-        int x = (int)Math.round(colWidth*col);
-        int w = Math.max(1, (int)Math.round(colWidth*(col+1)) - x);
+        double y = rowEdges[row];
+        double h = Math.max(pixel, rowEdges[row+1] - y);
+        double x = columnEdges[col];
+        double w = Math.max(pixel, columnEdges[col+1] - x);
         
         Data elem = grid[row][col];
         Color c;
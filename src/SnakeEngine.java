@@ -0,0 +1,782 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A headless game of snake. A SnakeEngine holds the same rules as SnakeCanvas, but
+ * stores the board as a flat array of cell codes and the snake as a ring buffer of
+ * cell indices, so that stepping a game never allocates and never needs the FX
+ * toolkit. This is the class to use for bots, training and batch simulation.
+ *
+ * Cells are numbered row by row, so the cell at (row, column) has the index
+ * row * columns + column. Directions use the same numbering as Snake:
+ * 0 = UP, 1 = RIGHT, 2 = DOWN, 3 = LEFT.
+ */
+
+public class SnakeEngine {
+
+
+    //------------------------- cell codes ------------------------------
+
+
+    public static final byte EMPTY = 0;
+    public static final byte SNAKE = 1;
+    public static final byte FOOD = 2;
+    public static final byte WALL = 3;
+
+    public static final int FOOD_VALUE = 10; // Points for eating one food, same as FoodData.
+    public static final double FOOD_CHANCE = 0.03; // Chance of an extra food each tick, same as SnakeApp.main.
+
+    static final int MAX_CHANGES = 8; // A single tick changes at most a handful of cells.
+
+    private static final int PAGE_SHIFT = 8; // The board is stored in pages of 256 cells.
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+
+
+    //------------------ private instance variables --------------------
+
+
+    private final Level level; // The walls, spawn points and food zones of the board.
+
+    private final int rows, columns; // The size of the board.
+
+    private final int cellCount; // The number of cells on the board.
+
+    private final byte[][] pages; // The contents of every cell on the board, in pages. A
+                                  //    forked game shares its pages with the game it was
+                                  //    forked from until one of them writes to a page.
+
+    private final boolean[] owned; // True for each page that only this game uses.
+    private int ownedCount;
+
+    private int[] body; // A ring buffer of the cells occupied by the snake. The head is at
+                        //    body[head] and the tail is length - 1 places later. It grows
+                        //    with the snake, since on a large level it is usually much
+                        //    shorter than the number of cells.
+
+    private int head, length; // Position of the head in body, and the length of the snake.
+
+    private int growth; // Number of segments the snake still has to grow by.
+
+    private int dir; // The direction that the snake is moving, as in Snake.
+
+    private int score; // The score of the current game.
+
+    private int[] foods = new int[16]; // The cells holding food, in no particular order.
+    private int foodCount;
+
+    private boolean playing; // True while the game is in progress.
+
+    private long ticks; // The number of ticks played in the current game.
+
+    private long randomState; // The state of the generator that decides where food is
+                              //    placed. It is a single long so that a SnakeHistory
+                              //    can save and restore it.
+
+    private final int[] changed = new int[MAX_CHANGES]; // Cells changed by the last tick,
+    private final byte[] changedFrom = new byte[MAX_CHANGES]; //    and what they held before.
+    private int changedCount;
+
+    private int lastTail; // The cell the tail left in the last tick, or -1.
+
+    private byte deathCause; // What the snake hit when the game ended: WALL (also for
+                             //    the edge of the board) or SNAKE. EMPTY while playing.
+
+    private SnakeHistory history; // Records every tick, if set.
+
+    private GameEventBus events; // Receives the events of the game, if set.
+    private long eventId; // The id of this game on the event bus.
+
+
+    //------------------------ constructors -----------------------------
+
+
+    /**
+     * Construct a SnakeEngine with a randomly seeded food generator.
+     */
+    public SnakeEngine(int rows, int columns) {
+        this(rows, columns, new Random().nextLong());
+    }
+
+
+    /**
+     * Construct a SnakeEngine whose food placement is determined by the seed,
+     * so that the same seed and the same inputs always replay the same game.
+     * @param rows the number of rows on the board. Must be at least 5.
+     * @param columns the number of columns on the board. Must be positive.
+     * @param seed the seed for the food generator.
+     */
+    public SnakeEngine(int rows, int columns, long seed) {
+        this(Level.standard(rows, columns), seed);
+    }
+
+
+    /**
+     * Construct a SnakeEngine that plays on a level.
+     * @param level the level. It must have at least one spawn point.
+     * @param seed the seed for the food generator and the choice of spawn point.
+     */
+    public SnakeEngine(Level level, long seed) {
+        if (level.getSpawnCount() == 0)
+            throw new IllegalArgumentException("The level has no spawn point.");
+        this.level = level;
+        rows = level.getRows();
+        columns = level.getColumns();
+        cellCount = rows * columns;
+        pages = new byte[(cellCount + PAGE_SIZE - 1) >> PAGE_SHIFT][];
+        owned = new boolean[pages.length];
+        body = new int[64];
+        randomState = seed;
+        reset();
+    }
+
+
+    /**
+     * Construct a copy of a game for fork(). The pages of the board are shared.
+     */
+    private SnakeEngine(SnakeEngine parent) {
+        level = parent.level;
+        rows = parent.rows;
+        columns = parent.columns;
+        cellCount = parent.cellCount;
+        pages = parent.pages.clone();
+        owned = new boolean[pages.length];
+        body = new int[parent.body.length];
+        for (int i = 0; i < parent.length; i++)
+            body[i] = parent.getSegment(i);
+        head = 0;
+        length = parent.length;
+        foods = Arrays.copyOf(parent.foods, parent.foods.length);
+        foodCount = parent.foodCount;
+        growth = parent.growth;
+        dir = parent.dir;
+        score = parent.score;
+        playing = parent.playing;
+        ticks = parent.ticks;
+        randomState = parent.randomState;
+        deathCause = parent.deathCause;
+        lastTail = -1;
+    }
+
+
+    //--------- methods for getting and setting engine properties ----------
+
+
+    /**
+     * Return the level the game is played on.
+     */
+    public Level getLevel() {
+        return level;
+    }
+
+
+    /**
+     * Return the number of rows on the board.
+     */
+    public int getRows() {
+        return rows;
+    }
+
+
+    /**
+     * Return the number of columns on the board.
+     */
+    public int getColumns() {
+        return columns;
+    }
+
+
+    /**
+     * Return the cell code at a row and column.
+     */
+    public byte getCell(int row, int column) {
+        return get(row * columns + column);
+    }
+
+
+    /**
+     * Return the cell code at a cell index.
+     */
+    public byte getCell(int index) {
+        return get(index);
+    }
+
+
+    /**
+     * Return the cell index of the snake's head.
+     */
+    public int getHead() {
+        return body[head];
+    }
+
+
+    /**
+     * Return the cell index of the i'th segment of the snake, where 0 is the head.
+     */
+    public int getSegment(int i) {
+        return body[(head + i) % body.length];
+    }
+
+
+    /**
+     * Return the number of segments in the snake.
+     */
+    public int getLength() {
+        return length;
+    }
+
+
+    /**
+     * Return the direction the snake is moving in.
+     */
+    public int getDir() {
+        return dir;
+    }
+
+
+    /**
+     * Return the score of the current game.
+     */
+    public int getScore() {
+        return score;
+    }
+
+
+    /**
+     * Return the number of food items on the board.
+     */
+    public int getFoodCount() {
+        return foodCount;
+    }
+
+
+    /**
+     * Return true if the game is in progress.
+     */
+    public boolean getPlaying() {
+        return playing;
+    }
+
+
+    /**
+     * Return what the snake hit when the game ended: WALL for a wall or the edge
+     * of the board, SNAKE for itself, or EMPTY while the game is in progress.
+     */
+    public byte getDeathCause() {
+        return deathCause;
+    }
+
+
+    /**
+     * Return the number of ticks played in the current game.
+     */
+    public long getTicks() {
+        return ticks;
+    }
+
+
+    /**
+     * Return the number of cells changed by the last call to tick() or step().
+     */
+    public int getChangedCount() {
+        return changedCount;
+    }
+
+
+    /**
+     * Return the index of the i'th cell changed by the last call to tick() or step().
+     */
+    public int getChanged(int i) {
+        return changed[i];
+    }
+
+
+    /**
+     * Return the cell index of the i'th food on the board.
+     */
+    public int getFood(int i) {
+        return foods[i];
+    }
+
+
+    /**
+     * Return the cell next to a cell in a direction, or -1 if that is off the board.
+     */
+    public int getNeighbor(int cell, int dir) {
+        int row = cell / columns + Level.rowStep(dir), col = cell % columns + Level.columnStep(dir);
+        if (row < 0 || row >= rows || col < 0 || col >= columns)
+            return -1;
+        return row * columns + col;
+    }
+
+
+    /**
+     * Return the history that records this game, or null.
+     */
+    public SnakeHistory getHistory() {
+        return history;
+    }
+
+
+    /**
+     * Record every tick of this game in a history, so it can be rewound. The
+     * history is cleared. Pass null to stop recording.
+     */
+    public void setHistory(SnakeHistory history) {
+        this.history = history;
+        if (history != null)
+            history.clear(this);
+    }
+
+
+    /**
+     * Publish the events of this game on a bus, tagged with an id. Pass null to
+     * stop publishing.
+     */
+    public void setEvents(GameEventBus events, long id) {
+        this.events = events;
+        eventId = id;
+    }
+
+
+    /**
+     * Copy the cell codes of the whole board into an array of rows * columns bytes.
+     */
+    public void copyCells(byte[] dest) {
+        for (int p = 0; p < pages.length; p++)
+            System.arraycopy(pages[p], 0, dest, p << PAGE_SHIFT, Math.min(PAGE_SIZE, cellCount - (p << PAGE_SHIFT)));
+    }
+
+
+    //------------------ other useful public methods ---------------------
+
+
+    /**
+     * Change the direction of the snake.
+     */
+    public void changeDir(int dir) {
+        this.dir = dir;
+    }
+
+
+    /**
+     * Return an independent copy of this game, for looking ahead. The copy and the
+     * original share the pages of the board until one of them changes a page, so
+     * forking costs about as much as copying the snake, not the board. The copy
+     * has no history. Forking a game that has not changed since it was last forked
+     * only reads it, so many threads may fork such a game at once.
+     */
+    public SnakeEngine fork() {
+        SnakeEngine copy = new SnakeEngine(this);
+        if (ownedCount > 0) { // from now on, both games must copy a page before writing it
+            Arrays.fill(owned, false);
+            ownedCount = 0;
+        }
+        return copy;
+    }
+
+
+    /**
+     * Start a new game with the food generator reseeded.
+     */
+    public void reset(long seed) {
+        randomState = seed;
+        reset();
+    }
+
+
+    /**
+     * Start a new game. The board is copied from the level, the snake is placed
+     * at one of its spawn points and one food is added. On the standard level
+     * this is the same four squares at the bottom center of the board as a Snake,
+     * moving UP.
+     * @throws IllegalStateException if a cell of the level is neither EMPTY nor WALL,
+     *     as in a damaged LevelPack.
+     */
+    public void reset() {
+        ByteBuffer source = level.getCells();
+        for (int p = 0; p < pages.length; p++) {
+            if (!owned[p]) {
+                pages[p] = new byte[PAGE_SIZE];
+                owned[p] = true;
+                ownedCount++;
+            }
+            byte[] page = pages[p];
+            int size = Math.min(PAGE_SIZE, cellCount - (p << PAGE_SHIFT));
+            source.get(page, 0, size);
+            for (int i = 0; i < size; i++) { // the page was just copied, so this reads it from the cache
+                if (page[i] != EMPTY && page[i] != WALL)
+                    throw new IllegalStateException("Cell " + ((p << PAGE_SHIFT) + i) + " of the level has the code "
+                                                    + page[i] + ", which is neither EMPTY nor WALL.");
+            }
+        }
+        int spawn = level.getSpawnCount() == 1 ? 0 : nextInt(level.getSpawnCount());
+        int row = level.getSpawnRow(spawn), col = level.getSpawnColumn(spawn);
+        dir = level.getSpawnDir(spawn);
+        head = 0;
+        length = 0;
+        for (int i = Level.START_LENGTH - 1; i >= 0; i--) { // from the tail up to the head
+            int cell = (row - i * Level.rowStep(dir)) * columns + col - i * Level.columnStep(dir);
+            if (get(cell) == WALL) // Level refuses this, so the level was changed behind its back
+                throw new IllegalStateException("The spawn point of the level is on a wall.");
+            pushHead(cell);
+            put(cell, SNAKE);
+        }
+        growth = 0;
+        score = 0;
+        foodCount = 0;
+        ticks = 0;
+        playing = true;
+        deathCause = EMPTY;
+        changedCount = 0;
+        if (events != null)
+            events.publish(GameEventType.RESTARTED, eventId, ticks, body[head], 0);
+        addFood();
+        changedCount = 0;
+        lastTail = -1;
+        if (history != null)
+            history.clear(this);
+    }
+
+
+    /**
+     * Play one tick the way SnakeApp.main does: sometimes add an extra food,
+     * then move the snake. Has no effect if the game is over, just as SnakeApp.main
+     * adds no food while no game is in progress.
+     */
+    public void tick() {
+        if (!playing)
+            return;
+        if (history != null)
+            history.beginTick(this, true);
+        changedCount = 0;
+        lastTail = -1;
+        if (nextDouble() < FOOD_CHANCE)
+            addFood();
+        move();
+        if (history != null)
+            history.endTick(this);
+    }
+
+
+    /**
+     * Move the snake one square without the chance of an extra food. Has no
+     * effect if the game is over.
+     */
+    public void step() {
+        if (!playing)
+            return;
+        if (history != null)
+            history.beginTick(this, false);
+        changedCount = 0;
+        lastTail = -1;
+        move();
+        if (history != null)
+            history.endTick(this);
+    }
+
+
+    //------------- methods used by SnakeHistory to rewind a game -------------
+
+
+    int getGrowth() {
+        return growth;
+    }
+
+
+    long getRandomState() {
+        return randomState;
+    }
+
+
+    byte getChangedFrom(int i) {
+        return changedFrom[i];
+    }
+
+
+    int getLastTail() {
+        return lastTail;
+    }
+
+
+    /**
+     * Undo one tick, given the cells it changed with their old contents and the
+     * state of the game before it.
+     * @param moved true if the head moved in the tick.
+     * @param tail the cell the tail left in the tick, or -1.
+     */
+    void undo(int[] cellList, byte[] oldList, int offset, int count, boolean moved, int tail,
+            int dir, int score, int growth, boolean playing, long ticks, long randomState) {
+        for (int k = offset + count - 1; k >= offset; k--) // newest change first
+            setCell(cellList[k], oldList[k]);
+        if (moved) {
+            head = (head + 1) % body.length;
+            length--;
+        }
+        if (tail >= 0) {
+            length++;
+            body[(head + length - 1) % body.length] = tail;
+        }
+        this.dir = dir;
+        this.score = score;
+        this.growth = growth;
+        this.playing = playing;
+        if (playing)
+            deathCause = EMPTY;
+        this.ticks = ticks;
+        this.randomState = randomState;
+        changedCount = 0;
+        lastTail = -1;
+    }
+
+
+    /**
+     * Replace the snake and the food with a saved layout. Only the cells of the
+     * current snake and food are cleared, so this does not touch the rest of the board.
+     * @param path the direction from each segment to the next, four to a byte.
+     */
+    void restore(int headCell, int newLength, byte[] path, int[] foodList, int newFoodCount,
+            int dir, int score, int growth, boolean playing, long ticks, long randomState) {
+        for (int i = 0; i < length; i++)
+            put(getSegment(i), EMPTY);
+        for (int i = 0; i < foodCount; i++)
+            put(foods[i], EMPTY);
+        foodCount = 0;
+        head = 0;
+        length = 0;
+        int cell = headCell;
+        for (int i = 0; i < newLength; i++) {
+            if (length == body.length)
+                body = Arrays.copyOf(body, body.length * 2);
+            body[length++] = cell;
+            put(cell, SNAKE);
+            if (i + 1 < newLength) {
+                int step = path[i / 4] >> (i % 4 * 2) & 3;
+                cell += Level.rowStep(step) * columns + Level.columnStep(step);
+            }
+        }
+        for (int i = 0; i < newFoodCount; i++)
+            setCell(foodList[i], FOOD);
+        this.dir = dir;
+        this.score = score;
+        this.growth = growth;
+        this.playing = playing;
+        if (playing)
+            deathCause = EMPTY;
+        this.ticks = ticks;
+        this.randomState = randomState;
+        changedCount = 0;
+        lastTail = -1;
+    }
+
+
+    // private implementation section
+
+
+    /**
+     * Move the head one square in the current direction, following the rules
+     * of SnakeCanvas.updateGrid().
+     */
+    private void move() {
+        if (!playing)
+            return;
+
+        int from = body[head];
+        int row = from / columns, col = from % columns;
+        switch (dir) {
+            case 0 -> row--;
+            case 1 -> col++;
+            case 2 -> row++;
+            default -> col--;
+        }
+
+        // Going off the board, game over
+        if (row < 0 || row >= rows || col < 0 || col >= columns) {
+            die(WALL);
+            return;
+        }
+
+        // The snake may move into the square its tail is leaving, unless it is growing
+        int to = row * columns + col;
+        int tail = body[(head + length - 1) % body.length];
+        byte target = get(to);
+        if (target == WALL || (target == SNAKE && (growth > 0 || to != tail))) {
+            die(target);
+            return;
+        }
+
+        if (growth > 0) {
+            growth--;
+        }
+        else {
+            change(tail, EMPTY);
+            length--;
+            lastTail = tail;
+        }
+        pushHead(to);
+        change(to, SNAKE);
+        ticks++;
+        if (events != null)
+            events.publish(GameEventType.MOVED, eventId, ticks, to, dir);
+
+        if (target == FOOD) {
+            score += FOOD_VALUE;
+            growth++;
+            if (events != null)
+                events.publish(GameEventType.ATE, eventId, ticks, to, FOOD_VALUE);
+            if (foodCount == 0) // always ensure there is at least one food on the board
+                addFood();
+        }
+    }
+
+
+    private void die(byte cause) {
+        playing = false;
+        deathCause = cause;
+        if (events != null)
+            events.publish(GameEventType.DIED, eventId, ticks, body[head], cause);
+    }
+
+
+    /**
+     * Add a food to a random empty cell of the board, or of the level's food
+     * zones if it has any. This is only done within a tick, so that a SnakeHistory
+     * records the food with the tick and puts it back when the tick is played again.
+     * @return false if there was no empty cell left.
+     */
+    private boolean addFood() {
+        int area = level.getFoodZoneCount() == 0 ? cellCount : level.getFoodZoneArea();
+        int cell = -1;
+        for (int tries = 0; tries < 32 && cell < 0; tries++) {
+            int c = foodCell(nextInt(area));
+            if (get(c) == EMPTY)
+                cell = c;
+        }
+        if (cell < 0) { // the board is crowded, so search it from a random start
+            int start = nextInt(area);
+            for (int i = 0; i < area && cell < 0; i++) {
+                int c = foodCell((start + i) % area);
+                if (get(c) == EMPTY)
+                    cell = c;
+            }
+            if (cell < 0)
+                return false;
+        }
+        change(cell, FOOD);
+        if (events != null)
+            events.publish(GameEventType.SPAWNED, eventId, ticks, cell, 0);
+        return true;
+    }
+
+
+    /**
+     * Return the cell with the given number, counting through the food zones
+     * one after the other, or through the whole board if there are none.
+     */
+    private int foodCell(int n) {
+        if (level.getFoodZoneCount() == 0)
+            return n;
+        for (int z = 0; ; z++) {
+            int height = level.getFoodZone(z, 2), width = level.getFoodZone(z, 3);
+            if (n < height * width)
+                return (level.getFoodZone(z, 0) + n / width) * columns + level.getFoodZone(z, 1) + n % width;
+            n -= height * width;
+        }
+    }
+
+
+    private void pushHead(int cell) {
+        if (length == body.length) { // unroll the ring into a larger array
+            int[] bigger = new int[body.length * 2];
+            for (int i = 0; i < length; i++)
+                bigger[i] = body[(head + i) % body.length];
+            body = bigger;
+            head = 0;
+        }
+        head = (head - 1 + body.length) % body.length;
+        body[head] = cell;
+        length++;
+    }
+
+
+    /**
+     * Change the contents of a cell and remember the change.
+     */
+    private void change(int cell, byte value) {
+        if (changedCount < MAX_CHANGES) {
+            changed[changedCount] = cell;
+            changedFrom[changedCount++] = get(cell);
+        }
+        setCell(cell, value);
+    }
+
+
+    /**
+     * Change the contents of a cell, keeping the list of food up to date.
+     */
+    private void setCell(int cell, byte value) {
+        byte old = get(cell);
+        if (old == FOOD) {
+            for (int i = 0; i < foodCount; i++) {
+                if (foods[i] == cell) {
+                    foods[i] = foods[--foodCount];
+                    break;
+                }
+            }
+        }
+        if (value == FOOD) {
+            if (foodCount == foods.length)
+                foods = Arrays.copyOf(foods, foods.length * 2);
+            foods[foodCount++] = cell;
+        }
+        put(cell, value);
+    }
+
+
+    private byte get(int cell) {
+        return pages[cell >> PAGE_SHIFT][cell & (PAGE_SIZE - 1)];
+    }
+
+
+    /**
+     * Write a cell, first copying its page if it is shared with another game.
+     */
+    private void put(int cell, byte value) {
+        int p = cell >> PAGE_SHIFT;
+        if (!owned[p]) {
+            pages[p] = pages[p].clone();
+            owned[p] = true;
+            ownedCount++;
+        }
+        pages[p][cell & (PAGE_SIZE - 1)] = value;
+    }
+
+
+    /**
+     * Return the next number from a SplitMix64 generator.
+     */
+    private long nextLong() {
+        long z = (randomState += 0x9E3779B97F4A7C15L);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+
+    /**
+     * Return a random number from 0 up to bound - 1.
+     */
+    private int nextInt(int bound) {
+        return (int)(((nextLong() >>> 33) * bound) >>> 31);
+    }
+
+
+    /**
+     * Return a random number from 0 up to 1.
+     */
+    private double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+
+} // end of class SnakeEngine
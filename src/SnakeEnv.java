@@ -0,0 +1,231 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * A batch of independent snake games that are stepped together, for training agents.
+ * Every call to step() takes one action per game and plays one tick of every game.
+ * The observations of all games live in one direct FloatBuffer that is allocated once,
+ * and only the cells changed by a tick are rewritten, so a step costs about the same
+ * no matter how large the board is. A game that ends is started again right away.
+ *
+ * The observation of game i starts at float i * getObservationSize() and is made up of
+ * three planes of rows * columns floats, in the order BODY, HEAD, FOOD. A cell of a plane
+ * is 1 if the cell holds that kind of object and 0 otherwise.
+ */
+
+public class SnakeEnv {
+
+
+    //------------------------- plane offsets ---------------------------
+
+
+    public static final int BODY = 0;
+    public static final int HEAD = 1;
+    public static final int FOOD = 2;
+    public static final int PLANES = 3;
+
+    public static final float FOOD_REWARD = 1f; // Reward for eating one food.
+    public static final float DEATH_REWARD = -1f; // Reward for ending a game.
+
+
+    //------------------ private instance variables --------------------
+
+
+    private final SnakeEngine[] games; // The games in the batch.
+
+    private final int cellCount; // The number of cells on one board.
+
+    private final FloatBuffer observations; // The observation planes of every game.
+
+    private final float[] rewards; // The reward of each game for the last step.
+
+    private final boolean[] dones; // True for each game that ended in the last step.
+
+    private final int[] lastHead; // The head cell of each game in its current observation.
+
+    private final long seed; // The seed of the first game. Later games use seed + 1, seed + 2, ...
+
+    private long gamesStarted; // The number of games started so far, used to seed new games.
+
+
+    //------------------------ constructors -----------------------------
+
+
+    /**
+     * Construct a batch of games on boards of the same size.
+     * @param count the number of games in the batch. Must be positive, and small
+     *              enough that the observations of the batch fit in one buffer.
+     * @param rows the number of rows on each board.
+     * @param columns the number of columns on each board.
+     * @param seed the seed of the first game. Every game that is started gets its own
+     *              seed, so that a run of the batch can be repeated exactly.
+     */
+    public SnakeEnv(int count, int rows, int columns, long seed) {
+        if (count <= 0)
+            throw new IllegalArgumentException("The batch must contain at least one game.");
+        long size = (long)count * PLANES * rows * columns * Float.BYTES;
+        if (size > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("The observations of " + count + " games of " + rows + " by "
+                                               + columns + " cells would take " + size
+                                               + " bytes, more than one buffer can hold.");
+        this.seed = seed;
+        cellCount = rows * columns;
+        games = new SnakeEngine[count];
+        for (int i = 0; i < count; i++)
+            games[i] = new SnakeEngine(rows, columns, seed + gamesStarted++);
+        observations = ByteBuffer.allocateDirect((int)size)
+                .order(ByteOrder.nativeOrder()).asFloatBuffer();
+        rewards = new float[count];
+        dones = new boolean[count];
+        lastHead = new int[count];
+        for (int i = 0; i < count; i++)
+            writeObservation(i);
+    }
+
+
+    //--------- methods for getting batch properties ----------
+
+
+    /**
+     * Return the number of games in the batch.
+     */
+    public int getCount() {
+        return games.length;
+    }
+
+
+    /**
+     * Return the number of floats in the observation of one game.
+     */
+    public int getObservationSize() {
+        return PLANES * cellCount;
+    }
+
+
+    /**
+     * Return the buffer holding the observations of every game. The buffer is
+     * updated in place by every call to step() and reset().
+     */
+    public FloatBuffer getObservations() {
+        return observations;
+    }
+
+
+    /**
+     * Return the rewards of the last step, one per game. The array is reused.
+     */
+    public float[] getRewards() {
+        return rewards;
+    }
+
+
+    /**
+     * Return the done flags of the last step, one per game. The array is reused.
+     */
+    public boolean[] getDones() {
+        return dones;
+    }
+
+
+    /**
+     * Return one of the games in the batch, for example to draw it.
+     */
+    public SnakeEngine getGame(int i) {
+        return games[i];
+    }
+
+
+    //------------------ other useful public methods ---------------------
+
+
+    /**
+     * Start every game in the batch again from the beginning of the seed sequence.
+     */
+    public void reset() {
+        gamesStarted = 0;
+        for (int i = 0; i < games.length; i++) {
+            games[i].reset(seed + gamesStarted++);
+            writeObservation(i);
+            rewards[i] = 0;
+            dones[i] = false;
+        }
+    }
+
+
+    /**
+     * Play one tick of every game. Afterwards getRewards(), getDones() and
+     * getObservations() describe the result. A game that ended is started again,
+     * and its observation is the first frame of the new game.
+     * @param actions the direction for each game, numbered as in Snake: 0 to 3.
+     * @throws IllegalArgumentException if an action is not a direction. No game is
+     *     played then.
+     */
+    public void step(int[] actions) {
+        if (actions.length != games.length)
+            throw new IllegalArgumentException("Expected " + games.length + " actions.");
+        for (int i = 0; i < actions.length; i++) {
+            if (actions[i] < 0 || actions[i] > 3)
+                throw new IllegalArgumentException("Action " + i + " is " + actions[i]
+                                                   + ", not a direction from 0 to 3.");
+        }
+        for (int i = 0; i < games.length; i++) {
+            SnakeEngine game = games[i];
+            int before = game.getScore();
+            game.changeDir(actions[i]);
+            game.tick();
+            if (game.getPlaying()) {
+                rewards[i] = (game.getScore() - before) / SnakeEngine.FOOD_VALUE * FOOD_REWARD;
+                dones[i] = false;
+                updateObservation(i);
+            }
+            else {
+                rewards[i] = DEATH_REWARD;
+                dones[i] = true;
+                game.reset(seed + gamesStarted++);
+                writeObservation(i);
+            }
+        }
+    }
+
+
+    // private implementation section
+
+
+    /**
+     * Rewrite only the cells of game i that changed in its last tick.
+     */
+    private void updateObservation(int i) {
+        SnakeEngine game = games[i];
+        int base = i * PLANES * cellCount;
+        observations.put(base + HEAD * cellCount + lastHead[i], 0f);
+        for (int k = 0; k < game.getChangedCount(); k++)
+            writeCell(base, game, game.getChanged(k));
+        lastHead[i] = game.getHead();
+        observations.put(base + HEAD * cellCount + lastHead[i], 1f);
+    }
+
+
+    /**
+     * Rewrite every cell of game i.
+     */
+    private void writeObservation(int i) {
+        SnakeEngine game = games[i];
+        int base = i * PLANES * cellCount;
+        for (int c = 0; c < cellCount; c++) {
+            writeCell(base, game, c);
+            observations.put(base + HEAD * cellCount + c, 0f);
+        }
+        lastHead[i] = game.getHead();
+        observations.put(base + HEAD * cellCount + lastHead[i], 1f);
+    }
+
+
+    private void writeCell(int base, SnakeEngine game, int c) {
+        byte cell = game.getCell(c);
+        observations.put(base + BODY * cellCount + c, cell == SnakeEngine.SNAKE ? 1f : 0f);
+        observations.put(base + FOOD * cellCount + c, cell == SnakeEngine.FOOD ? 1f : 0f);
+    }
+
+
+} // end of class SnakeEnv
@@ -0,0 +1,343 @@
+import java.util.Arrays;
+
+/**
+ * A SnakeHistory remembers the most recent ticks of a SnakeEngine, so that the game can
+ * be rewound and played forward again. It is attached to a game with
+ * SnakeEngine.setHistory(). For every tick it keeps only what changed: the few cells
+ * that were written, the cell the tail left, and the score, direction and other small
+ * values from before the tick. Every CHECKPOINT_INTERVAL ticks it also keeps a compact
+ * copy of the snake and the food, so that seek() can jump a long way without undoing
+ * every tick in between.
+ *
+ * The history holds a fixed number of ticks. Once it is full, the oldest tick is
+ * forgotten for each new one, so its memory does not grow with the length of a game.
+ * Positions count the ticks recorded since the game started; position 0 is the
+ * state right after the game was reset.
+ *
+ * Playing a tick after rewinding throws away the ticks that had been undone, as in
+ * the undo list of an editor. The history only sees ticks and resets: the engine
+ * adds food only within them, and changes made to the board any other way would
+ * not be rewound.
+ */
+
+public class SnakeHistory {
+
+
+    public static final int CHECKPOINT_INTERVAL = 64; // Ticks between two checkpoints.
+
+
+    //------------------ private instance variables --------------------
+
+
+    private final int capacity; // The number of ticks that can be remembered.
+
+    // The state before each tick, stored by slot = position % capacity
+    private final byte[] dirs; // The direction used in the tick, which forward() plays with.
+    private final byte[] headings; // The direction before the tick, which undo restores. It
+                                   //    differs from dirs if the player turned just before it.
+    private final boolean[] extraFood; // True if the tick was played by tick(), false for step().
+    private final boolean[] wasPlaying;
+    private final int[] scores, growths;
+    private final long[] ticks, randoms;
+
+    // What each tick did
+    private final boolean[] moved; // True if the head moved.
+    private final int[] tails; // The cell the tail left, or -1.
+    private final byte[] changeCounts; // The number of cells changed,
+    private final int[] changeCells; //    the cells themselves,
+    private final byte[] changeFrom; //    and what they held before.
+
+    // Checkpoints, stored by (position / CHECKPOINT_INTERVAL) % checkpoint count
+    private final long[] cpPosition; // The position of the checkpoint, or -1 if unused.
+    private final int[] cpHead, cpLength, cpFoodCount, cpDir, cpScore, cpGrowth;
+    private final boolean[] cpPlaying;
+    private final long[] cpTicks, cpRandom;
+    private final byte[][] cpPath; // The direction from each segment to the next, four to a byte.
+    private final int[][] cpFoods;
+
+    private SnakeEngine game; // The game being recorded.
+
+    private long first; // The position of the oldest remembered tick.
+
+    private long newest; // The position after the newest remembered tick.
+
+    private long position; // The position of the game's current state.
+
+    private boolean replaying; // True while forward() is playing remembered ticks again.
+
+    private int heading; // The direction of the game at the current position, as it was
+                         //    before any changeDir() for the next tick.
+
+
+    //------------------------ constructors -----------------------------
+
+
+    /**
+     * Construct a SnakeHistory that remembers up to capacity ticks.
+     */
+    public SnakeHistory(int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("The capacity must be greater than zero.");
+        this.capacity = capacity;
+        dirs = new byte[capacity];
+        headings = new byte[capacity];
+        extraFood = new boolean[capacity];
+        wasPlaying = new boolean[capacity];
+        scores = new int[capacity];
+        growths = new int[capacity];
+        ticks = new long[capacity];
+        randoms = new long[capacity];
+        moved = new boolean[capacity];
+        tails = new int[capacity];
+        changeCounts = new byte[capacity];
+        changeCells = new int[capacity * SnakeEngine.MAX_CHANGES];
+        changeFrom = new byte[capacity * SnakeEngine.MAX_CHANGES];
+
+        int count = capacity / CHECKPOINT_INTERVAL + 2;
+        cpPosition = new long[count];
+        cpHead = new int[count];
+        cpLength = new int[count];
+        cpFoodCount = new int[count];
+        cpDir = new int[count];
+        cpScore = new int[count];
+        cpGrowth = new int[count];
+        cpPlaying = new boolean[count];
+        cpTicks = new long[count];
+        cpRandom = new long[count];
+        cpPath = new byte[count][16];
+        cpFoods = new int[count][4];
+        Arrays.fill(cpPosition, -1);
+    }
+
+
+    //--------- methods for getting history properties ----------
+
+
+    /**
+     * Return the number of ticks this history can remember.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+
+    /**
+     * Return the position of the game's current state.
+     */
+    public long getPosition() {
+        return position;
+    }
+
+
+    /**
+     * Return the earliest position the game can be rewound to.
+     */
+    public long getOldest() {
+        return first;
+    }
+
+
+    /**
+     * Return the latest position the game can be played forward to.
+     */
+    public long getNewest() {
+        return newest;
+    }
+
+
+    //------------------ other useful public methods ---------------------
+
+
+    /**
+     * Undo up to n ticks, newest first. Each tick costs a few small writes.
+     * @return the number of ticks undone, which is less than n if the start
+     *              of the history was reached.
+     */
+    public int rewind(int n) {
+        checkAttached();
+        int count = 0;
+        while (count < n && position > first) {
+            position--;
+            int slot = slot(position);
+            game.undo(changeCells, changeFrom, slot * SnakeEngine.MAX_CHANGES, changeCounts[slot],
+                    moved[slot], tails[slot], headings[slot], scores[slot], growths[slot],
+                    wasPlaying[slot], ticks[slot], randoms[slot]);
+            heading = headings[slot];
+            count++;
+        }
+        return count;
+    }
+
+
+    /**
+     * Play up to n undone ticks again, with the same directions and food as before.
+     * @return the number of ticks played.
+     */
+    public int forward(int n) {
+        checkAttached();
+        int count = 0;
+        while (count < n && position < newest) {
+            int slot = slot(position);
+            game.changeDir(dirs[slot]);
+            replaying = true;
+            try {
+                if (extraFood[slot])
+                    game.tick();
+                else
+                    game.step();
+            }
+            finally {
+                replaying = false;
+            }
+            count++;
+        }
+        return count;
+    }
+
+
+    /**
+     * Move the game to any remembered position, either by undoing or replaying
+     * ticks, or by restoring the nearest checkpoint and replaying from there,
+     * whichever takes fewer ticks.
+     */
+    public void seek(long target) {
+        checkAttached();
+        if (target < first || target > newest)
+            throw new IllegalArgumentException("Position " + target + " is not in the history.");
+        int best = -1;
+        for (int i = 0; i < cpPosition.length; i++) {
+            long p = cpPosition[i];
+            if (p >= first && p <= target && (best < 0 || p > cpPosition[best]))
+                best = i;
+        }
+        if (best >= 0 && target - cpPosition[best] < Math.abs(target - position)) {
+            game.restore(cpHead[best], cpLength[best], cpPath[best], cpFoods[best], cpFoodCount[best],
+                    cpDir[best], cpScore[best], cpGrowth[best], cpPlaying[best], cpTicks[best], cpRandom[best]);
+            position = cpPosition[best];
+            heading = cpDir[best];
+        }
+        if (target < position)
+            rewind((int)(position - target));
+        else
+            forward((int)(target - position));
+    }
+
+
+    // methods called by SnakeEngine
+
+
+    /**
+     * Forget everything and start recording a game from its current state.
+     */
+    void clear(SnakeEngine game) {
+        this.game = game;
+        first = 0;
+        newest = 0;
+        position = 0;
+        heading = game.getDir();
+        Arrays.fill(cpPosition, -1);
+        saveCheckpoint();
+    }
+
+
+    /**
+     * Remember the state of the game before a tick.
+     * @param extra true if the tick may add an extra food.
+     */
+    void beginTick(SnakeEngine game, boolean extra) {
+        if (!replaying && position < newest) { // a new move after rewinding: forget the undone ticks
+            newest = position;
+            for (int i = 0; i < cpPosition.length; i++)
+                if (cpPosition[i] > position)
+                    cpPosition[i] = -1;
+        }
+        int slot = slot(position);
+        dirs[slot] = (byte)game.getDir();
+        headings[slot] = (byte)heading;
+        extraFood[slot] = extra;
+        wasPlaying[slot] = game.getPlaying();
+        scores[slot] = game.getScore();
+        growths[slot] = game.getGrowth();
+        ticks[slot] = game.getTicks();
+        randoms[slot] = game.getRandomState();
+    }
+
+
+    /**
+     * Remember what a tick changed.
+     */
+    void endTick(SnakeEngine game) {
+        int slot = slot(position);
+        moved[slot] = game.getTicks() != ticks[slot];
+        tails[slot] = game.getLastTail();
+        int count = game.getChangedCount();
+        changeCounts[slot] = (byte)count;
+        for (int k = 0; k < count; k++) {
+            changeCells[slot * SnakeEngine.MAX_CHANGES + k] = game.getChanged(k);
+            changeFrom[slot * SnakeEngine.MAX_CHANGES + k] = game.getChangedFrom(k);
+        }
+        position++;
+        heading = game.getDir();
+        if (position > newest)
+            newest = position;
+        if (newest - first > capacity)
+            first = newest - capacity;
+        if (!replaying && position % CHECKPOINT_INTERVAL == 0)
+            saveCheckpoint();
+    }
+
+
+    // private implementation section
+
+
+    private int slot(long p) {
+        return (int)(p % capacity);
+    }
+
+
+    private void checkAttached() {
+        if (game == null || game.getHistory() != this)
+            throw new IllegalStateException("The history is not attached to a game.");
+    }
+
+
+    /**
+     * Save a compact copy of the snake, the food and the small values of the game.
+     */
+    private void saveCheckpoint() {
+        int i = (int)(position / CHECKPOINT_INTERVAL % cpPosition.length);
+        int columns = game.getColumns();
+        int length = game.getLength();
+        if (cpPath[i].length * 4 < length)
+            cpPath[i] = new byte[length / 2];
+        byte[] path = cpPath[i];
+        Arrays.fill(path, (byte)0);
+        for (int s = 1; s < length; s++) {
+            int from = game.getSegment(s - 1), to = game.getSegment(s);
+            int step;
+            if (from / columns != to / columns)
+                step = to / columns < from / columns ? 0 : 2;
+            else
+                step = to < from ? 3 : 1;
+            path[(s - 1) / 4] |= (byte)(step << ((s - 1) % 4 * 2));
+        }
+        int foodCount = game.getFoodCount();
+        if (cpFoods[i].length < foodCount)
+            cpFoods[i] = new int[foodCount * 2];
+        for (int f = 0; f < foodCount; f++)
+            cpFoods[i][f] = game.getFood(f);
+
+        cpPosition[i] = position;
+        cpHead[i] = game.getHead();
+        cpLength[i] = length;
+        cpFoodCount[i] = foodCount;
+        cpDir[i] = game.getDir();
+        cpScore[i] = game.getScore();
+        cpGrowth[i] = game.getGrowth();
+        cpPlaying[i] = game.getPlaying();
+        cpTicks[i] = game.getTicks();
+        cpRandom[i] = game.getRandomState();
+    }
+
+
+} // end of class SnakeHistory
@@ -0,0 +1,153 @@
+/**
+ * A SnakeRasterizer draws the board of a SnakeEngine into an array of ARGB pixels,
+ * without a window and without starting the FX toolkit. Each cell is drawn as a
+ * square block of pixels, in the same colors that SnakeCanvas uses (see CellColors).
+ * The frames can be handed to a FrameExporter to be saved as images.
+ */
+
+public class SnakeRasterizer {
+
+
+    //------------------ private instance variables --------------------
+
+
+    private final int rows, columns; // The size of the board that is drawn.
+
+    private final int blockSize; // The width and height of one cell, in pixels.
+
+    private final int width, height; // The size of a frame, in pixels.
+
+    private final int[] cellColors; // The color of each cell code, indexed by the code.
+
+
+    //------------------------ constructors -----------------------------
+
+
+    /**
+     * Construct a SnakeRasterizer for boards with the given number of rows and columns.
+     * @param blockSize the width and height of one cell in pixels. Must be positive.
+     */
+    public SnakeRasterizer(int rows, int columns, int blockSize) {
+        if (rows <= 0 || columns <= 0 || blockSize <= 0)
+            throw new IllegalArgumentException("Rows, columns and block size must be greater than zero.");
+        this.rows = rows;
+        this.columns = columns;
+        this.blockSize = blockSize;
+        width = columns * blockSize;
+        height = rows * blockSize;
+        cellColors = getPalette();
+    }
+
+
+    //--------- methods for getting rasterizer properties ----------
+
+
+    /**
+     * Return the number of rows of the boards this rasterizer draws.
+     */
+    public int getRows() {
+        return rows;
+    }
+
+
+    /**
+     * Return the number of columns of the boards this rasterizer draws.
+     */
+    public int getColumns() {
+        return columns;
+    }
+
+
+    /**
+     * Return the width of a frame in pixels.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+
+    /**
+     * Return the height of a frame in pixels.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+
+    /**
+     * Return every color that can appear in a frame, for building an image palette.
+     */
+    public int[] getPalette() {
+        return new int[] { CellColors.BACKGROUND_ARGB, CellColors.SNAKE_ARGB, CellColors.FOOD_ARGB,
+                           CellColors.WALL_ARGB };
+    }
+
+
+    //------------------ other useful public methods ---------------------
+
+
+    /**
+     * Create an array big enough to hold one frame.
+     */
+    public int[] newFrame() {
+        return new int[width * height];
+    }
+
+
+    /**
+     * Draw the board of a game into a frame. Pixels are stored row by row, starting
+     * at the top left corner of the board.
+     * @param game the game to draw. It must have the same size as this rasterizer.
+     * @param frame an array of at least getWidth() * getHeight() pixels.
+     */
+    public void render(SnakeEngine game, int[] frame) {
+        if (game.getRows() != rows || game.getColumns() != columns)
+            throw new IllegalArgumentException("The game does not match the size of the rasterizer.");
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < columns; c++)
+                fillBlock(frame, r, c, cellColors[game.getCell(r, c)]);
+            copyBlockLine(frame, r);
+        }
+    }
+
+
+    /**
+     * Draw a board that was copied with SnakeEngine.copyCells() into a frame.
+     * @param cells the cell codes of a board of the same size as this rasterizer.
+     * @param frame an array of at least getWidth() * getHeight() pixels.
+     */
+    public void render(byte[] cells, int[] frame) {
+        if (cells.length != rows * columns)
+            throw new IllegalArgumentException("The board does not match the size of the rasterizer.");
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < columns; c++)
+                fillBlock(frame, r, c, cellColors[cells[r * columns + c]]);
+            copyBlockLine(frame, r);
+        }
+    }
+
+
+    // private implementation section
+
+
+    /**
+     * Fill the first line of pixels of the block for one cell.
+     */
+    private void fillBlock(int[] frame, int row, int col, int color) {
+        int x = row * blockSize * width + col * blockSize;
+        for (int i = 0; i < blockSize; i++)
+            frame[x + i] = color;
+    }
+
+
+    /**
+     * Copy the first line of pixels of a row of cells down the rest of the row.
+     */
+    private void copyBlockLine(int[] frame, int row) {
+        int start = row * blockSize * width;
+        for (int i = 1; i < blockSize; i++)
+            System.arraycopy(frame, start, frame, start + i * width, width);
+    }
+
+
+} // end of class SnakeRasterizer
@@ -0,0 +1,331 @@
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * SnakeTerminal plays snake in a text terminal, for example over SSH, using ANSI
+ * escape sequences. Each cell is drawn as two character columns. After the first
+ * frame, only the cells that changed since the last frame are drawn again, with a
+ * cursor move only where the changed cells are not next to each other, and the
+ * whole frame is sent in one write. A tick usually changes two or three cells, so
+ * a frame is a few dozen bytes whatever the size of the board.
+ *
+ * Keys: the arrow keys or w, a, s, d steer; u undoes the last ticks (also after
+ * losing); r starts a new game; q quits.
+ *
+ * Usage: java SnakeTerminal [rows columns [SLOW|MEDIUM|FAST]]
+ *    or: java SnakeTerminal pack level [SLOW|MEDIUM|FAST]
+ *
+ * The second form plays level number level (counting from 0) of the LevelPack
+ * file pack.
+ */
+
+public class SnakeTerminal {
+
+
+    public static final int UNDO_TICKS = 10; // The number of ticks one press of u undoes.
+
+
+    //------------------ private instance variables --------------------
+
+
+    private final SnakeEngine game; // The game being played.
+
+    private final SnakeHistory history; // Lets the player undo.
+
+    private final Speed speed; // The speed of the snake.
+
+    private final OutputStream out; // The terminal.
+
+    private final byte[] shown; // The cell code currently on the screen for every cell,
+                                //    or -1 if the cell has not been drawn.
+
+    private final byte[] current; // The cell codes of the game for this frame.
+
+    private byte[] frame = new byte[4096]; // The bytes of the frame being built.
+    private int frameLength;
+
+    private int cursorRow = -1, cursorCol = -1; // Where the terminal cursor is, or -1 if unknown.
+
+    private int color = -1; // The background color the terminal is set to, or -1 if unknown.
+
+    private int shownScore = -1; // The score on the screen.
+
+    private boolean shownGameOver; // True if the game over message is on the screen.
+
+    private final AtomicInteger pendingDir = new AtomicInteger(-1); // A direction typed since the
+                                                                    //    last tick, or -1.
+
+    private final AtomicInteger pendingCommand = new AtomicInteger(); // A command key typed since
+                                                                      //    the last tick, or 0.
+
+
+    //------------------------ constructors -----------------------------
+
+
+    /**
+     * Construct a SnakeTerminal that plays a game on the standard level.
+     */
+    public SnakeTerminal(int rows, int columns, Speed speed, OutputStream out) {
+        this(Level.standard(rows, columns), speed, out);
+    }
+
+
+    /**
+     * Construct a SnakeTerminal that plays a game on a level.
+     */
+    public SnakeTerminal(Level level, Speed speed, OutputStream out) {
+        game = new SnakeEngine(level, new Random().nextLong());
+        history = new SnakeHistory(1024);
+        game.setHistory(history);
+        this.speed = speed;
+        this.out = out;
+        shown = new byte[level.getRows() * level.getColumns()];
+        current = new byte[level.getRows() * level.getColumns()];
+        Arrays.fill(shown, (byte)-1);
+    }
+
+
+    //------------------ other useful public methods ---------------------
+
+
+    /**
+     * Play until the player presses q or the input ends. The cursor and the colors
+     * of the terminal are restored even if the game stops with an exception.
+     */
+    public void play(InputStream in) throws IOException {
+        Thread reader = new Thread(() -> readKeys(in), "terminal-keys");
+        reader.setDaemon(true);
+        reader.start();
+
+        try {
+            text("\u001b[2J\u001b[?25l"); // clear the screen and hide the cursor
+            cursorRow = -1;
+            drawFrame();
+
+            while (true) {
+                int command = pendingCommand.getAndSet(0);
+                if (command == 'q' || command < 0)
+                    break;
+                if (command == 'r') {
+                    game.reset();
+                }
+                else if (command == 'u') {
+                    history.rewind(UNDO_TICKS);
+                }
+                else if (game.getPlaying()) {
+                    int dir = pendingDir.getAndSet(-1);
+                    if (dir >= 0)
+                        game.changeDir(dir);
+                    game.tick();
+                }
+                drawFrame();
+                sleep(speed.getDelay());
+            }
+        }
+        finally {
+            frameLength = 0; // drop whatever half-built frame an exception left behind
+            cursorRow = -1;
+            moveTo(game.getRows() + 1, 0);
+            text("\u001b[0m\u001b[?25h\r\n"); // reset colors and show the cursor again
+            flush();
+        }
+    }
+
+
+    /**
+     * Play a game in the terminal this program was started from. The terminal is
+     * switched to raw mode with stty while the game runs.
+     */
+    public static void main(String[] args) throws IOException {
+        Speed speed = args.length >= 3 ? Speed.valueOf(args[2]) : Speed.MEDIUM;
+        Level level;
+        if (args.length >= 2 && !args[0].chars().allMatch(Character::isDigit)) {
+            LevelPack pack = new LevelPack(Path.of(args[0]));
+            int index = Integer.parseInt(args[1]);
+            if (index < 0 || index >= pack.getLevelCount()) {
+                System.out.println("The pack has levels 0 to " + (pack.getLevelCount() - 1) + ".");
+                return;
+            }
+            level = pack.getLevel(index); // the pack stays open, since the level reads its cells from it
+        }
+        else {
+            level = Level.standard(args.length >= 2 ? Integer.parseInt(args[0]) : 30,
+                                   args.length >= 2 ? Integer.parseInt(args[1]) : 30);
+        }
+        SnakeTerminal terminal = new SnakeTerminal(level, speed, new FileOutputStream(FileDescriptor.out));
+
+        String saved = stty("-g").trim();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                stty(saved);
+            }
+            catch (IOException e) {
+            }
+        }));
+        stty("raw -echo");
+        terminal.play(System.in);
+        System.exit(0);
+    }
+
+
+    // private implementation section
+
+
+    /**
+     * Draw everything that differs from what is on the screen, in one write.
+     */
+    private void drawFrame() throws IOException {
+        game.copyCells(current);
+        int columns = game.getColumns();
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] != shown[i]) {
+                moveTo(i / columns, i % columns * 2);
+                cell(current[i]);
+                shown[i] = current[i];
+                cursorCol += 2;
+            }
+        }
+
+        if (game.getScore() != shownScore) {
+            moveTo(game.getRows(), 0);
+            text("\u001b[0mscore: " + game.getScore() + "   ");
+            cursorRow = -1; // the text may have left the cursor anywhere
+            color = -1;
+            shownScore = game.getScore();
+        }
+        if (game.getPlaying() == shownGameOver) {
+            moveTo(game.getRows(), 16);
+            text(game.getPlaying() ? "\u001b[0m\u001b[K"
+                    : "\u001b[0;1mGAME OVER\u001b[0m  u: undo  r: play again  q: quit");
+            cursorRow = -1;
+            color = -1;
+            shownGameOver = !game.getPlaying();
+        }
+        flush();
+    }
+
+
+    /**
+     * Move the cursor to a row and character column, unless it is already there.
+     */
+    private void moveTo(int row, int col) {
+        if (row == cursorRow && col == cursorCol)
+            return;
+        text("\u001b[" + (row + 1) + ";" + (col + 1) + "H");
+        cursorRow = row;
+        cursorCol = col;
+    }
+
+
+    /**
+     * Draw one cell as two spaces on a background of the cell's color, changing the
+     * color only if it differs from the last one used.
+     */
+    private void cell(byte code) {
+        int argb = CellColors.of(code);
+        if (argb != color) {
+            text("\u001b[48;2;" + (argb >> 16 & 255) + ";" + (argb >> 8 & 255) + ";" + (argb & 255) + "m");
+            color = argb;
+        }
+        text("  ");
+    }
+
+
+    private void text(String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.US_ASCII);
+        if (frameLength + bytes.length > frame.length)
+            frame = Arrays.copyOf(frame, Math.max(frame.length * 2, frameLength + bytes.length));
+        System.arraycopy(bytes, 0, frame, frameLength, bytes.length);
+        frameLength += bytes.length;
+    }
+
+
+    private void flush() throws IOException {
+        if (frameLength > 0) {
+            out.write(frame, 0, frameLength);
+            out.flush();
+            frameLength = 0;
+        }
+    }
+
+
+    /**
+     * The body of the key reader thread. Arrow keys arrive as ESC [ A to ESC [ D, or
+     * as ESC O A to ESC O D when the terminal is in application cursor mode.
+     */
+    private void readKeys(InputStream in) {
+        try {
+            int state = 0; // 0 = normal, 1 = after ESC, 2 = after ESC [ or ESC O
+            int b;
+            while ((b = in.read()) >= 0) {
+                if (state == 2) {
+                    switch (b) {
+                        case 'A' -> pendingDir.set(0);
+                        case 'C' -> pendingDir.set(1);
+                        case 'B' -> pendingDir.set(2);
+                        case 'D' -> pendingDir.set(3);
+                        default -> { }
+                    }
+                    state = 0;
+                }
+                else if (state == 1) {
+                    state = b == '[' || b == 'O' ? 2 : 0;
+                }
+                else {
+                    switch (b) {
+                        case 27 -> state = 1;
+                        case 'w' -> pendingDir.set(0);
+                        case 'd' -> pendingDir.set(1);
+                        case 's' -> pendingDir.set(2);
+                        case 'a' -> pendingDir.set(3);
+                        case 'u', 'r', 'q' -> pendingCommand.set(b);
+                        case 3 -> pendingCommand.set('q'); // ctrl-c, which raw mode does not turn into a signal
+                        default -> { }
+                    }
+                }
+            }
+        }
+        catch (IOException e) {
+        }
+        pendingCommand.set(-1); // the input has ended
+    }
+
+
+    /**
+     * Wait between two ticks. SnakeApp.delay() is not used, so that the terminal
+     * never loads a JavaFX class.
+     */
+    private static void sleep(int milliseconds) {
+        try {
+            Thread.sleep(milliseconds);
+        }
+        catch (InterruptedException e) {
+        }
+    }
+
+
+    /**
+     * Run stty on the controlling terminal and return what it printed.
+     */
+    private static String stty(String arguments) throws IOException {
+        Process p = new ProcessBuilder("sh", "-c", "stty " + arguments + " < /dev/tty").start();
+        try {
+            String output = new String(p.getInputStream().readAllBytes(), StandardCharsets.US_ASCII);
+            p.waitFor();
+            return output;
+        }
+        catch (InterruptedException e) {
+            throw new IOException("Interrupted while running stty.");
+        }
+    }
+
+
+} // end of class SnakeTerminal
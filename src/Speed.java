@@ -0,0 +1,32 @@
+/**
+ * The speed of the snake. Each speed is the delay between two ticks of the game,
+ * and is shared by every frontend so that the game plays the same everywhere.
+ */
+
+public enum Speed {
+
+    SLOW(300),
+    MEDIUM(150),
+    FAST(75);
+
+
+    //------------------ private instance variables --------------------
+
+
+    private final int delay; // The time between two ticks, in milliseconds.
+
+
+    Speed(int delay) {
+        this.delay = delay;
+    }
+
+
+    /**
+     * Return the time between two ticks, in milliseconds.
+     */
+    public int getDelay() {
+        return delay;
+    }
+
+
+} // end of enum Speed